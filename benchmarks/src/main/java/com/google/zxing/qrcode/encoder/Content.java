@@ -0,0 +1,95 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Mike-ADDED: benchmark texts, repeated to fill a given version. Public for JMH-generated code.
+ */
+public enum Content {
+  NUMERIC("0123456789", null),
+  ALPHANUMERIC("HTTPS://EXAMPLE.COM/ID/42-$%*+ ", null),
+  BYTE("The quick brown fox jumps over the lazy dog; ", null),
+  KANJI("漢字日本語文字列点検", "Shift_JIS"),
+  MIXED("Order #20261016-0042 ACME GMBH qty 000123456 ", null),
+  ;
+
+  final String unit;
+  final String charset;
+
+  Content(String unit, String charset) {
+    this.unit = unit;
+    this.charset = charset;
+  }
+
+  Charset charset() {
+    return charset == null ? null : Charset.forName(charset);
+  }
+
+  Map<EncodeHintType, Object> hints(boolean compact) {
+    Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+    if (charset != null) {
+      hints.put(EncodeHintType.CHARACTER_SET, charset);
+    }
+    if (compact) {
+      hints.put(EncodeHintType.QR_COMPACT, true);
+    }
+    return hints;
+  }
+
+  String text(int length) {
+    StringBuilder sb = new StringBuilder(length);
+    while (sb.length() < length) {
+      sb.append(unit, 0, Math.min(unit.length(), length - sb.length()));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the longest text which fits into {@code version}
+   */
+  String fill(int version, ErrorCorrectionLevel ecLevel) {
+    Map<EncodeHintType, Object> hints = hints(false);
+    int fits = 1;
+    int tooLong = 8000;
+    while (tooLong - fits > 1) {
+      int length = (fits + tooLong) >>> 1;
+      if (encodedVersion(text(length), ecLevel, hints) <= version) {
+        fits = length;
+      } else {
+        tooLong = length;
+      }
+    }
+    return text(fits);
+  }
+
+  private static int encodedVersion(String text, ErrorCorrectionLevel ecLevel, Map<EncodeHintType, Object> hints) {
+    try {
+      return Encoder.encode(text, ecLevel, hints).version;
+    } catch (WriterException e) {
+      return Integer.MAX_VALUE;
+    }
+  }
+
+}
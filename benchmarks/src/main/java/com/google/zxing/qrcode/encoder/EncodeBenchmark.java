@@ -0,0 +1,84 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mike-ADDED: end-to-end {@link Encoder#encode}, with a fresh and a reused {@link EncoderContext},
+ * and sizing alone with {@link Encoder#plan}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodeBenchmark {
+
+  @Param({ "1", "10", "25", "40" })
+  public int version;
+
+  @Param({ "L", "M", "Q", "H" })
+  public ErrorCorrectionLevel ecLevel;
+
+  @Param({ "NUMERIC", "ALPHANUMERIC", "BYTE", "KANJI", "MIXED" })
+  public Content content;
+
+  private String text;
+  private Map<EncodeHintType, Object> hints;
+  private final EncoderContext context = new EncoderContext();
+
+  @Setup
+  public void setUp() {
+    text = content.fill(version, ecLevel);
+    hints = content.hints(false);
+  }
+
+  @Benchmark
+  public QRCode encode() throws WriterException {
+    return Encoder.encode(text, ecLevel, hints);
+  }
+
+  @Benchmark
+  public QRCode encodeWithContext() throws WriterException {
+    return Encoder.encode(text, ecLevel, hints, context);
+  }
+
+  @Benchmark
+  public EncodePlan plan() throws WriterException {
+    return Encoder.plan(text, ecLevel, hints, context);
+  }
+
+}
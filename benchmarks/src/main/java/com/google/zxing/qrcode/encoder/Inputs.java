@@ -0,0 +1,45 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.Random;
+
+/**
+ * Mike-ADDED: inputs of single stages.
+ */
+final class Inputs {
+
+  private Inputs() {
+  }
+
+  /**
+   * @return random data bits of all data codewords of the symbol
+   */
+  static BitArray dataBits(int version, ErrorCorrectionLevel ecLevel) {
+    int numDataBytes = Encoder.totalCodewordsForVersion(version) - Encoder.totalECCodewordsForVersion(version, ecLevel);
+    Random random = new Random(version * 4 + ecLevel.ordinal());
+    BitArray bits = new BitArray();
+    for (int i = 0; i < numDataBytes; i++) {
+      bits.appendBits(random.nextInt(256), 8);
+    }
+    return bits;
+  }
+
+}
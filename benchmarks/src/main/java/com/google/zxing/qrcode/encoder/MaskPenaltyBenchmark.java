@@ -0,0 +1,122 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mike-ADDED: every {@link MaskUtil} rule on a finished symbol, both via {@link ByteMatrix} adapters
+ * (which include conversion) and directly on bitboards.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MaskPenaltyBenchmark {
+
+  @Param({ "1", "10", "25", "40" })
+  public int version;
+
+  private ByteMatrix matrix;
+  private int dimension;
+  private long[] rows;
+  private long[] columns;
+
+  @Setup
+  public void setUp() throws WriterException {
+    ErrorCorrectionLevel ecLevel = ErrorCorrectionLevel.M;
+    matrix = Encoder.encode(Content.BYTE.fill(version, ecLevel), ecLevel).matrix;
+    dimension = matrix.width;
+    rows = new long[dimension * MaskUtil.lineWords(dimension)];
+    columns = new long[dimension * MaskUtil.lineWords(dimension)];
+    MaskUtil.toBitboards(matrix, rows, columns);
+  }
+
+  @Benchmark
+  public int rule1Horizontal() {
+    return MaskUtil.applyMaskPenaltyRule1Internal(matrix, true);
+  }
+
+  @Benchmark
+  public int rule1Vertical() {
+    return MaskUtil.applyMaskPenaltyRule1Internal(matrix, false);
+  }
+
+  @Benchmark
+  public int rule2() {
+    return MaskUtil.applyMaskPenaltyRule2(matrix);
+  }
+
+  @Benchmark
+  public int rule3() {
+    return MaskUtil.applyMaskPenaltyRule3(matrix);
+  }
+
+  @Benchmark
+  public int rule4() {
+    return MaskUtil.applyMaskPenaltyRule4(matrix);
+  }
+
+  @Benchmark
+  public long[] toBitboards() {
+    MaskUtil.toBitboards(matrix, rows, columns);
+    return rows;
+  }
+
+  @Benchmark
+  public int bitboardRule1() {
+    return MaskUtil.penaltyRule1(rows, dimension, dimension) + MaskUtil.penaltyRule1(columns, dimension, dimension);
+  }
+
+  @Benchmark
+  public int bitboardRule2() {
+    return MaskUtil.penaltyRule2(rows, dimension, dimension);
+  }
+
+  @Benchmark
+  public int bitboardRule3() {
+    return MaskUtil.penaltyRule3(rows, dimension, dimension) + MaskUtil.penaltyRule3(columns, dimension, dimension);
+  }
+
+  @Benchmark
+  public int bitboardRule4() {
+    return MaskUtil.penaltyRule4(rows, dimension, dimension);
+  }
+
+  @Benchmark
+  public int bitboardTotal() {
+    return MaskUtil.calculateMaskPenalty(rows, columns, dimension, dimension);
+  }
+
+}
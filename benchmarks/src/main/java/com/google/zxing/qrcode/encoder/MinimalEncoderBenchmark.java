@@ -0,0 +1,88 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mike-ADDED: {@link MinimalEncoder} alone, and end-to-end encoding with and without {@code QR_COMPACT}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MinimalEncoderBenchmark {
+
+  @Param({ "1", "10", "25", "40" })
+  public int version;
+
+  @Param({ "NUMERIC", "ALPHANUMERIC", "BYTE", "KANJI", "MIXED" })
+  public Content content;
+
+  private static final ErrorCorrectionLevel EC_LEVEL = ErrorCorrectionLevel.M;
+
+  private String text;
+  private Charset priorityCharset;
+  private Map<EncodeHintType, Object> hints;
+  private Map<EncodeHintType, Object> compactHints;
+  private final int[] outVersion = new int[1];
+
+  @Setup
+  public void setUp() {
+    text = content.fill(version, EC_LEVEL);
+    priorityCharset = content.charset();
+    hints = content.hints(false);
+    compactHints = content.hints(true);
+  }
+
+  @Benchmark
+  public List<MinimalEncoder.ResultNode> minimalEncoder() throws WriterException {
+    return MinimalEncoder.encode(text, priorityCharset, false, EC_LEVEL, outVersion);
+  }
+
+  @Benchmark
+  public QRCode encode() throws WriterException {
+    return Encoder.encode(text, EC_LEVEL, hints);
+  }
+
+  @Benchmark
+  public QRCode encodeCompact() throws WriterException {
+    return Encoder.encode(text, EC_LEVEL, compactHints);
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mike-ADDED: pipeline stages after data bits are ready: error correction and interleaving, matrix building,
+ * mask selection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StagesBenchmark {
+
+  @Param({ "1", "10", "25", "40" })
+  public int version;
+
+  @Param({ "L", "M", "Q", "H" })
+  public ErrorCorrectionLevel ecLevel;
+
+  private BitArray dataBits;
+  private int numTotalBytes;
+  private int numDataBytes;
+  private int numRSBlocks;
+  private short[] interleaveOrder;
+  private byte[] blocks;
+  private byte[] codewords;
+  private BitArray finalBits;
+  private ByteMatrix matrix;
+  private EncoderContext context;
+  private ByteMatrix unmasked;
+  private long[][] maskBoards;
+
+  @Setup
+  public void setUp() throws WriterException {
+    dataBits = Inputs.dataBits(version, ecLevel);
+    numTotalBytes = Encoder.totalCodewordsForVersion(version);
+    numDataBytes = dataBits.getSizeInBytes();
+    numRSBlocks = Encoder.numBlocksForVersion(version, ecLevel);
+    interleaveOrder = VersionTemplate.forVersion(version).interleaveOrder[ecLevel.ordinal()];
+    blocks = new byte[numTotalBytes];
+    codewords = new byte[numTotalBytes];
+    Encoder.interleaveWithECBytes(dataBits, numTotalBytes, numDataBytes, numRSBlocks,
+        interleaveOrder, blocks, codewords);
+    finalBits = new BitArray();
+    finalBits.appendBytes(codewords, 0, numTotalBytes);
+    int dimension = Encoder.dimensionForVersion(version);
+    matrix = new ByteMatrix(dimension, dimension);
+    context = new EncoderContext();
+    context.setDimension(dimension);
+    unmasked = context.unmasked();
+    maskBoards = VersionTemplate.forVersion(version).maskBoards();
+    MatrixUtil.buildUnmaskedMatrix(codewords, numTotalBytes, version, unmasked);
+  }
+
+  @Benchmark
+  public byte[] interleaveWithECBytes() throws WriterException {
+    Encoder.interleaveWithECBytes(dataBits, numTotalBytes, numDataBytes, numRSBlocks,
+        interleaveOrder, blocks, codewords);
+    return codewords;
+  }
+
+  @Benchmark
+  public byte[] reedSolomon() throws WriterException {
+    int dataOffset = 0;
+    for (int i = 0; i < numRSBlocks; i++) {
+      long pair = Encoder.getNumDataBytesAndNumECBytesForBlockID(numTotalBytes, numDataBytes, numRSBlocks, i);
+      int size = (int) (pair >>> 32);
+      int numEcBytes = (int) pair;
+      Encoder.generateECBytes(blocks, dataOffset, size, blocks, numDataBytes + i * numEcBytes, numEcBytes);
+      dataOffset += size;
+    }
+    return blocks;
+  }
+
+  @Benchmark
+  public ByteMatrix buildMatrix() throws WriterException {
+    MatrixUtil.buildMatrix(finalBits, ecLevel, version, 0, matrix);
+    return matrix;
+  }
+
+  @Benchmark
+  public ByteMatrix buildUnmaskedMatrix() throws WriterException {
+    MatrixUtil.buildUnmaskedMatrix(codewords, numTotalBytes, version, unmasked);
+    return unmasked;
+  }
+
+  @Benchmark
+  public int chooseMaskPattern() throws WriterException {
+    return Encoder.chooseMaskPattern(unmasked, maskBoards, ecLevel, context);
+  }
+
+}
@@ -64,6 +64,13 @@ public enum EncodeHintType {
    */
   QR_MASK_PATTERN,
 
+  /**
+   * Specifies an {@link java.util.concurrent.Executor} to evaluate the QR code mask pattern candidates on
+   * concurrently, each one in its own matrix. This reduces latency of encoding large symbols while the chosen
+   * mask pattern stays exactly the same as with sequential evaluation.
+   * (Type {@link java.util.concurrent.Executor}, e.g. a {@link java.util.concurrent.ForkJoinPool}).
+   */
+  QR_MASK_EXECUTOR, // Mike-ADDED
 
   /**
    * Specifies whether to use compact mode for QR code (type {@link Boolean}, or "true" or "false"
@@ -74,6 +81,14 @@ public enum EncodeHintType {
    */
   QR_COMPACT,
 
+  /**
+   * Specifies whether to split QR code content into segments of different modes with the linear-time
+   * heuristics of ISO/IEC 18004 Annex J (type {@link Boolean}, or "true" or "false").
+   * Symbols may be slightly larger than with {@link #QR_COMPACT}, which takes precedence, but no graph is built.
+   * KANJI mode is used only if {@link #CHARACTER_SET} is Shift_JIS.
+   */
+  QR_GREEDY_SEGMENTATION, // Mike-ADDED
+
   /**
    * Specifies whether the data should be encoded to the GS1 standard (type {@link Boolean}, or "true" or "false"
    * {@link String } value).
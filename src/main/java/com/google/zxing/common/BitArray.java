@@ -16,6 +16,8 @@
 
 package com.google.zxing.common;
 
+import java.util.Arrays;
+
 /**
  * <p>A simple, fast array of bits, represented compactly by an array of ints internally.</p>
  *
@@ -38,6 +40,12 @@ public final class BitArray { // Mike-CHANGED: unimplement Cloneable
 
   // Mike-REMOVED BitArray(int[], int)
 
+  // Mike-ADDED: drop all bits keeping the storage, so the array can be reused
+  public void reset() {
+    Arrays.fill(bits, 0, (size + 31) / 32, 0);
+    size = 0;
+  }
+
   public int getSize() {
     return size;
   }
@@ -48,7 +56,7 @@ public final class BitArray { // Mike-CHANGED: unimplement Cloneable
 
   private void ensureCapacity(int size) {
     if (size > bits.length * 32) {
-      int[] newBits = makeArray(size);
+      int[] newBits = makeArray(Math.max(size, bits.length * 64)); // Mike-CHANGED: grow at least twice
       System.arraycopy(bits, 0, newBits, 0, bits.length);
       this.bits = newBits;
     }
@@ -85,23 +93,59 @@ public final class BitArray { // Mike-CHANGED: unimplement Cloneable
     if (numBits < 0 || numBits > 32) {
       throw new IllegalArgumentException("Num bits must be between 0 and 32");
     }
-    int nextSize = size;
-    ensureCapacity(nextSize + numBits);
-    for (int numBitsLeft = numBits - 1; numBitsLeft >= 0; numBitsLeft--) {
-      if ((value & (1 << numBitsLeft)) != 0) {
-        bits[nextSize / 32] |= 1 << (nextSize & 0x1F);
-      }
-      nextSize++;
+    if (numBits == 0) {
+      return;
+    }
+    ensureCapacity(size + numBits);
+    // Mike-CHANGED: writing all the bits at once, reversed, so the first one to append becomes the lowest
+    int reversed = Integer.reverse(value << (32 - numBits));
+    int word = size >>> 5;
+    int shift = size & 0x1F;
+    bits[word] |= reversed << shift;
+    if (shift + numBits > 32) {
+      bits[word + 1] |= reversed >>> (32 - shift);
+    }
+    size += numBits;
+  }
+
+  /**
+   * Mike-ADDED: appends {@code length} bytes from {@code array} starting at {@code offset},
+   * the same as {@code appendBits(array[i], 8)} for each of them.
+   */
+  public void appendBytes(byte[] array, int offset, int length) {
+    ensureCapacity(size + 8 * length);
+    int end = offset + length;
+    for (; offset + 4 <= end; offset += 4) {
+      appendBits(array[offset] << 24 | (array[offset + 1] & 0xFF) << 16 | (array[offset + 2] & 0xFF) << 8 |
+          (array[offset + 3] & 0xFF), 32);
+    }
+    for (; offset < end; offset++) {
+      appendBits(array[offset], 8);
     }
-    size = nextSize;
   }
 
   public void appendBitArray(BitArray other) {
     int otherSize = other.size;
+    if (otherSize == 0) {
+      return;
+    }
     ensureCapacity(size + otherSize);
-    for (int i = 0; i < otherSize; i++) {
-      appendBit(other.get(i));
+    // Mike-CHANGED: copying by words, shifted if this size is not a multiple of 32
+    int[] src = other == this ? bits.clone() : other.bits;
+    int words = (otherSize + 31) >>> 5;
+    int word = size >>> 5;
+    int shift = size & 0x1F;
+    for (int i = 0; i < words; i++) {
+      int w = src[i];
+      if (i == words - 1 && (otherSize & 0x1F) != 0) {
+        w &= (1 << otherSize) - 1; // bits past the size are not appended
+      }
+      bits[word + i] |= w << shift;
+      if (shift != 0 && (w >>>= 32 - shift) != 0) {
+        bits[word + i + 1] |= w;
+      }
     }
+    size += otherSize;
   }
 
   public void xor(BitArray other) {
@@ -124,6 +168,23 @@ public final class BitArray { // Mike-CHANGED: unimplement Cloneable
    * @param numBytes how many bytes to write
    */
   public void toBytes(int bitOffset, byte[] array, int offset, int numBytes) {
+    if ((bitOffset & 0x07) == 0) { // Mike-ADDED: byte-aligned, reversing whole bytes and words
+      int i = 0;
+      for (; i < numBytes && (bitOffset & 0x1F) != 0; i++, bitOffset += 8) {
+        array[offset + i] = (byte) (Integer.reverse(bits[bitOffset >>> 5] >>> (bitOffset & 0x1F)) >>> 24);
+      }
+      for (; i + 4 <= numBytes; i += 4, bitOffset += 32) {
+        int word = Integer.reverse(bits[bitOffset >>> 5]);
+        array[offset + i] = (byte) (word >>> 24);
+        array[offset + i + 1] = (byte) (word >>> 16);
+        array[offset + i + 2] = (byte) (word >>> 8);
+        array[offset + i + 3] = (byte) word;
+      }
+      for (; i < numBytes; i++, bitOffset += 8) {
+        array[offset + i] = (byte) (Integer.reverse(bits[bitOffset >>> 5] >>> (bitOffset & 0x1F)) >>> 24);
+      }
+      return;
+    }
     for (int i = 0; i < numBytes; i++) {
       int theByte = 0;
       for (int j = 0; j < 8; j++) {
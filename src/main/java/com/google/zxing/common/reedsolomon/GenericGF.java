@@ -31,9 +31,9 @@ public final class GenericGF {
 
   // Mike-REMOVED all static final GenericGFs
 
-  // Mike-CHANGED: unprivated expTable, zero, size, generatorBase; removed one and primitive
+  // Mike-CHANGED: unprivated expTable, logTable, zero, size, generatorBase; removed one and primitive
   public final int[] expTable;
-  private final int[] logTable;
+  public final int[] logTable;
   final GenericGFPoly zero;
   final int size;
   public final int generatorBase;
@@ -53,10 +53,11 @@ public final class GenericGF {
     this.size = size;
     this.generatorBase = b;
 
-    expTable = new int[size];
+    // Mike-CHANGED: expTable is doubled, so a sum of two logarithms can be used as an index without modulo
+    expTable = new int[2 * size];
     logTable = new int[size];
     int x = 1;
-    for (int i = 0; i < size; i++) {
+    for (int i = 0; i < 2 * size; i++) {
       expTable[i] = x;
       x *= 2; // we're assuming the generator alpha is 2
       if (x >= size) {
@@ -90,7 +91,7 @@ public final class GenericGF {
     if (a == 0 || b == 0) {
       return 0;
     }
-    return expTable[(logTable[a] + logTable[b]) % (size - 1)];
+    return expTable[logTable[a] + logTable[b]]; // Mike-CHANGED: no modulo, expTable is doubled
   }
 
   // Mike-REMOVED getSize, getGeneratorBase, toString
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Mike-ADDED: encodes many contents with the same error correction level and hints on a {@link ForkJoinPool}.
+ * Every worker reuses its own {@link EncoderContext} for the whole batch.
+ * A {@link WriterException} fails its own item only, other exceptions abort the batch.
+ */
+public final class BatchEncoder {
+
+  /**
+   * Receives results in input order, on the thread which has called
+   * {@link #encode(Iterator, ErrorCorrectionLevel, Map, ForkJoinPool, Sink)}.
+   */
+  public interface Sink {
+    void encoded(int index, QRCode code);
+    void failed(int index, WriterException e);
+  }
+
+  private static final int WINDOW = 4096; // items taken from an Iterator at once
+  private static final int LEAF = 16; // items encoded by a single task
+
+  private BatchEncoder() {
+  }
+
+  /**
+   * @param pool pool to run on, {@code null} for {@link ForkJoinPool#commonPool()}
+   * @param outFailures if not {@code null}, receives exceptions of failed items at their indices
+   * @return codes in input order, {@code null}s for failed items
+   */
+  public static QRCode[] encode(String[] contents,
+                                ErrorCorrectionLevel ecLevel,
+                                Map<EncodeHintType,?> hints,
+                                ForkJoinPool pool,
+                                WriterException[] outFailures) {
+    QRCode[] results = new QRCode[contents.length];
+    WriterException[] failures = outFailures != null ? outFailures : new WriterException[contents.length];
+    if (failures.length < contents.length) {
+      throw new IllegalArgumentException("outFailures is shorter than contents");
+    }
+    run(new Job(contents, contents.length, ecLevel, hints, results, failures), pool);
+    return results;
+  }
+
+  /**
+   * @see #encode(String[], ErrorCorrectionLevel, Map, ForkJoinPool, WriterException[])
+   */
+  public static QRCode[] encode(List<String> contents,
+                                ErrorCorrectionLevel ecLevel,
+                                Map<EncodeHintType,?> hints,
+                                ForkJoinPool pool,
+                                WriterException[] outFailures) {
+    return encode(contents.toArray(new String[0]), ecLevel, hints, pool, outFailures);
+  }
+
+  /**
+   * Takes contents by windows, so the iterator may be long or lazy. Every window is encoded concurrently
+   * and then passed to the sink in order.
+   * @param pool pool to run on, {@code null} for {@link ForkJoinPool#commonPool()}
+   */
+  public static void encode(Iterator<String> contents,
+                            ErrorCorrectionLevel ecLevel,
+                            Map<EncodeHintType,?> hints,
+                            ForkJoinPool pool,
+                            Sink sink) {
+    String[] window = new String[WINDOW];
+    QRCode[] results = new QRCode[WINDOW];
+    WriterException[] failures = new WriterException[WINDOW];
+    Queue<EncoderContext> contexts = new ConcurrentLinkedQueue<>();
+    int offset = 0;
+    while (contents.hasNext()) {
+      int size = 0;
+      while (size < WINDOW && contents.hasNext()) {
+        window[size++] = contents.next();
+      }
+      run(new Job(window, size, ecLevel, hints, results, failures, contexts), pool);
+      for (int i = 0; i < size; i++) {
+        if (failures[i] != null) {
+          sink.failed(offset + i, failures[i]);
+        } else {
+          sink.encoded(offset + i, results[i]);
+        }
+      }
+      Arrays.fill(results, 0, size, null);
+      Arrays.fill(failures, 0, size, null);
+      offset += size;
+    }
+  }
+
+  private static void run(Job job, ForkJoinPool pool) {
+    (pool == null ? ForkJoinPool.commonPool() : pool).invoke(new Part(job, 0, job.size));
+  }
+
+  private static final class Job {
+    final String[] contents;
+    final int size;
+    final ErrorCorrectionLevel ecLevel;
+    final Map<EncodeHintType,?> hints;
+    final QRCode[] results;
+    final WriterException[] failures;
+    final Queue<EncoderContext> contexts; // idle ones, at most one per worker gets created
+
+    Job(String[] contents, int size, ErrorCorrectionLevel ecLevel, Map<EncodeHintType,?> hints,
+        QRCode[] results, WriterException[] failures) {
+      this(contents, size, ecLevel, hints, results, failures, new ConcurrentLinkedQueue<EncoderContext>());
+    }
+
+    Job(String[] contents, int size, ErrorCorrectionLevel ecLevel, Map<EncodeHintType,?> hints,
+        QRCode[] results, WriterException[] failures, Queue<EncoderContext> contexts) {
+      this.contents = contents;
+      this.size = size;
+      this.ecLevel = ecLevel;
+      this.hints = hints;
+      this.results = results;
+      this.failures = failures;
+      this.contexts = contexts;
+    }
+  }
+
+  private static final class Part extends RecursiveAction {
+    private final Job job;
+    private final int from;
+    private final int to;
+
+    Part(Job job, int from, int to) {
+      this.job = job;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override protected void compute() {
+      if (to - from > LEAF) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new Part(job, from, middle), new Part(job, middle, to));
+        return;
+      }
+      EncoderContext context = job.contexts.poll();
+      if (context == null) {
+        context = new EncoderContext();
+      }
+      try {
+        for (int i = from; i < to; i++) {
+          try {
+            job.results[i] = Encoder.encode(job.contents[i], job.ecLevel, job.hints, context);
+          } catch (WriterException e) {
+            job.failures[i] = e;
+          }
+        }
+      } finally {
+        job.contexts.offer(context);
+      }
+    }
+  }
+
+}
@@ -69,6 +69,44 @@ public final class ByteMatrix {
     Arrays.fill(matrix, val);
   }
 
+  // Mike-ADDED: word-level copy and XOR, matrices must have the same dimensions
+  void copyFrom(ByteMatrix other) {
+    System.arraycopy(other.matrix, 0, matrix, 0, matrix.length);
+  }
+
+  // XOR-ing with a bitboard, 64 modules per long as in getRowBits(), flips modules under 1s,
+  // which must not be empty (-1).
+  void xorRowBits(long[] rows) {
+    int rowWords = (width + 63) >>> 6;
+    for (int y = 0; y < height; y++) {
+      for (int i = 0, base = widthInts * y; i < widthInts; i++) {
+        int v = (int) (rows[y * rowWords + (i >>> 2)] >>> ((i & 3) << 4)) & 0xFFFF;
+        v = (v | (v << 8)) & 0x00FF00FF; // 1 => 01
+        v = (v | (v << 4)) & 0x0F0F0F0F;
+        v = (v | (v << 2)) & 0x33333333;
+        v = (v | (v << 1)) & 0x55555555;
+        matrix[base + i] ^= v;
+      }
+    }
+  }
+
+  // Mike-ADDED: dark (1) modules of row y, 64 per long, the least significant bit is x = 0
+  void getRowBits(int y, long[] dst, int offset) {
+    Arrays.fill(dst, offset, offset + ((width + 63) >>> 6), 0L);
+    for (int i = 0, base = widthInts * y; i < widthInts; i++) {
+      int v = matrix[base + i];
+      v &= ~(v >>> 1) & 0x55555555; // 01 => 1, anything else => 0
+      v = (v | (v >>> 1)) & 0x33333333;
+      v = (v | (v >>> 2)) & 0x0F0F0F0F;
+      v = (v | (v >>> 4)) & 0x00FF00FF;
+      v = (v | (v >>> 8)) & 0x0000FFFF;
+      dst[offset + (i >>> 2)] |= (long) v << ((i & 3) << 4);
+    }
+    if ((width & 63) != 0) { // modules past the end may have been filled by clear()
+      dst[offset + (width >>> 6)] &= (1L << width) - 1;
+    }
+  }
+
   // Mike-REMOVED toString
 
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Mike-ADDED: which characters of the Basic Multilingual Plane a charset encodes, and into how many bytes,
+ * as {@link CharsetEncoder#canEncode(char)} and encoding a single character would tell.
+ * Unlike encoders, tables are immutable, so they are built once per charset and shared by all threads.
+ *
+ * <p>Besides UTF-8 and UTF-16, only charsets which take 1 or 2 bytes per character are supported:
+ * characters taking more are considered unencodable.</p>
+ */
+final class CharsetTable {
+
+  private static final int WORDS = 0x10000 / 64; // 8 KB per bitmap
+
+  private static final long[] ALL = new long[WORDS];
+
+  static {
+    Arrays.fill(ALL, -1L);
+  }
+
+  private static final ConcurrentMap<Charset, CharsetTable> TABLES = new ConcurrentHashMap<>();
+
+  static final CharsetTable ISO_8859_1 = new CharsetTable(StandardCharsets.ISO_8859_1, bitmap(0, 0x100), null, false);
+  static final CharsetTable UTF_8 = new CharsetTable(StandardCharsets.UTF_8, nonSurrogates(), null, true);
+  static final CharsetTable UTF_16BE = new CharsetTable(StandardCharsets.UTF_16BE, nonSurrogates(), ALL, false);
+
+  final Charset charset;
+  private final long[] encodable;
+  private final long[] twoBytes; // null if every character takes a single byte
+  private final boolean utf8;
+
+  private CharsetTable(Charset charset, long[] encodable, long[] twoBytes, boolean utf8) {
+    this.charset = charset;
+    this.encodable = encodable;
+    this.twoBytes = twoBytes;
+    this.utf8 = utf8;
+  }
+
+  /**
+   * @return shared table of the charset, built on first request
+   */
+  static CharsetTable forCharset(Charset charset) {
+    if (charset.equals(StandardCharsets.ISO_8859_1)) {
+      return ISO_8859_1;
+    } else if (charset.equals(StandardCharsets.UTF_8)) {
+      return UTF_8;
+    } else if (charset.equals(StandardCharsets.UTF_16BE)) {
+      return UTF_16BE;
+    }
+    CharsetTable table = TABLES.get(charset);
+    if (table == null) { // racy: at worst, a table is built twice, and the first one is kept
+      table = build(charset);
+      CharsetTable existing = TABLES.putIfAbsent(charset, table);
+      if (existing != null) {
+        table = existing;
+      }
+    }
+    return table;
+  }
+
+  boolean canEncode(char c) {
+    return (encodable[c >>> 6] & (1L << c)) != 0;
+  }
+
+  /**
+   * @return number of bytes the character is encoded into, 0 if it can't be encoded
+   */
+  int byteLength(char c) {
+    if (!canEncode(c)) {
+      return 0;
+    } else if (utf8) {
+      return c < 0x80 ? 1 : c < 0x800 ? 2 : 3; // surrogates are never encoded alone
+    } else {
+      return twoBytes != null && (twoBytes[c >>> 6] & (1L << c)) != 0 ? 2 : 1;
+    }
+  }
+
+  private static CharsetTable build(Charset charset) {
+    CharsetEncoder encoder = charset.newEncoder(); // a private one, encoders are stateful
+    long[] encodable = new long[WORDS];
+    long[] twoBytes = null;
+    boolean singleByte = encoder.maxBytesPerChar() <= 1;
+    CharBuffer in = singleByte ? null : CharBuffer.allocate(1);
+    ByteBuffer out = singleByte ? null : ByteBuffer.allocate((int) Math.ceil(encoder.maxBytesPerChar()) + 8);
+    for (int c = 0; c <= 0xFFFF; c++) {
+      if (!encoder.canEncode((char) c)) {
+        continue;
+      }
+      int length = 1;
+      if (!singleByte) {
+        ((Buffer) in).clear();
+        in.put((char) c);
+        ((Buffer) in).flip();
+        ((Buffer) out).clear();
+        encoder.reset();
+        encoder.encode(in, out, true);
+        encoder.flush(out);
+        length = out.position();
+      }
+      if (length == 2) {
+        if (twoBytes == null) {
+          twoBytes = new long[WORDS];
+        }
+        twoBytes[c >>> 6] |= 1L << c;
+      } else if (length != 1) {
+        continue;
+      }
+      encodable[c >>> 6] |= 1L << c;
+    }
+    return new CharsetTable(charset, encodable, twoBytes, false);
+  }
+
+  private static long[] bitmap(int from, int to) {
+    long[] bitmap = new long[WORDS];
+    for (int c = from; c < to; c++) {
+      bitmap[c >>> 6] |= 1L << c;
+    }
+    return bitmap;
+  }
+
+  private static long[] nonSurrogates() {
+    long[] bitmap = ALL.clone();
+    for (int c = Character.MIN_SURROGATE; c <= Character.MAX_SURROGATE; c++) {
+      bitmap[c >>> 6] &= ~(1L << c);
+    }
+    return bitmap;
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Mode;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Mike-ADDED: the first phase of encoding, see {@link Encoder#plan(CharSequence, ErrorCorrectionLevel,
+ * java.util.Map)}: segments are chosen and written, and the version is decided, but no error correction,
+ * module placement, or masking is done.
+ * This is enough to lay out symbols by their dimension or show the remaining capacity.
+ *
+ * <p>Plans are immutable: they may be cached and {@link #execute(EncoderContext) executed} later,
+ * any number of times, on any thread.</p>
+ */
+public final class EncodePlan {
+
+  public final Mode mode;
+  public final ErrorCorrectionLevel ecLevel;
+  public final int version;
+  public final int dimension;
+  /** header and data bits, before terminator and padding */
+  public final int bitsNeeded;
+  /** data bits the version holds at the error correction level */
+  public final int capacityBits;
+
+  private final BitArray headerAndDataBits;
+  private final int maskPattern;
+  private final Executor maskExecutor;
+
+  EncodePlan(Mode mode, ErrorCorrectionLevel ecLevel, int version, BitArray headerAndDataBits,
+             int maskPattern, Executor maskExecutor) {
+    this.mode = mode;
+    this.ecLevel = ecLevel;
+    this.version = version;
+    this.dimension = Encoder.dimensionForVersion(version);
+    this.bitsNeeded = headerAndDataBits.getSize();
+    this.capacityBits = 8 * (Encoder.totalCodewordsForVersion(version) -
+        Encoder.totalECCodewordsForVersion(version, ecLevel));
+    this.headerAndDataBits = new BitArray();
+    this.headerAndDataBits.appendBitArray(headerAndDataBits); // a copy, the context one is reused
+    this.maskPattern = maskPattern;
+    this.maskExecutor = maskExecutor;
+  }
+
+  /**
+   * @return how many more bits would fit in this version, e.g. to show the remaining capacity
+   */
+  public int remainingBits() {
+    return capacityBits - bitsNeeded;
+  }
+
+  public QRCode execute() throws WriterException {
+    return execute(new EncoderContext());
+  }
+
+  /**
+   * The second phase: error correction, placement, and masking, as requested by hints the plan was made with.
+   */
+  public QRCode execute(EncoderContext context) throws WriterException {
+    BitArray bits = context.headerAndDataBits; // terminated in place, so the plan is left intact
+    bits.reset();
+    bits.appendBitArray(headerAndDataBits);
+    return Encoder.encodePayload(mode, version, bits, ecLevel, maskPattern, maskExecutor, context);
+  }
+
+}
@@ -24,12 +24,24 @@ import com.google.zxing.common.reedsolomon.GenericGFPoly;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import com.google.zxing.qrcode.decoder.Mode;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author satorux@google.com (Satoru Takabayashi) - creator
@@ -52,6 +64,8 @@ public final class Encoder {
 
   static final Charset DEFAULT_BYTE_MODE_ENCODING = StandardCharsets.ISO_8859_1;
 
+  static final int CHUNK = 256; // Mike-ADDED: bytes encoded from chars at once
+
   // Mike-MOVED from GenericGF
   public static final GenericGF QR_CODE_FIELD_256 = new GenericGF(0x011D, 256, 0); // x^8 + x^4 + x^3 + x^2 + 1
 
@@ -105,13 +119,16 @@ public final class Encoder {
 
   // The mask penalty calculation is complicated.  See Table 21 of JISX0510:2004 (p.45) for details.
   // Basically it applies four rules and summate all penalties.
-  private static int calculateMaskPenalty(ByteMatrix matrix) {
-    // Mike-CHANGED: inlined applyMaskPenaltyRule1
-    return MaskUtil.applyMaskPenaltyRule1Internal(matrix, true) +
-        MaskUtil.applyMaskPenaltyRule1Internal(matrix, false) +
-        MaskUtil.applyMaskPenaltyRule2(matrix) +
-        MaskUtil.applyMaskPenaltyRule3(matrix) +
-        MaskUtil.applyMaskPenaltyRule4(matrix);
+  // Mike-CHANGED: evaluating on bitboards, rows and columns are scratch buffers
+  private static int calculateMaskPenalty(long[] unmaskedRows, long[] unmaskedColumns, long[][] maskBoards,
+                                          ErrorCorrectionLevel ecLevel, int maskPattern, int dimension,
+                                          long[] rows, long[] columns) throws WriterException {
+    MatrixUtil.applyMask(unmaskedRows, unmaskedColumns, maskBoards, ecLevel, maskPattern, dimension, rows, columns);
+    return MaskUtil.calculateMaskPenalty(rows, columns, dimension, dimension);
+  }
+
+  private static long[] newBitboard(int dimension) {
+    return new long[dimension * MaskUtil.lineWords(dimension)];
   }
 
   /**
@@ -128,15 +145,195 @@ public final class Encoder {
   public static QRCode encode(String content,
                               ErrorCorrectionLevel ecLevel,
                               Map<EncodeHintType,?> hints) throws WriterException {
+    return encode(content, ecLevel, hints, new EncoderContext());
+  }
+
+  /**
+   * Mike-ADDED: encode using buffers of the given context.
+   * @see EncoderContext
+   */
+  public static QRCode encode(String content,
+                              ErrorCorrectionLevel ecLevel,
+                              Map<EncodeHintType,?> hints,
+                              EncoderContext context) throws WriterException {
+    return encode((CharSequence) content, ecLevel, hints, context);
+  }
+
+  /**
+   * Mike-ADDED: encode any text, e.g. a {@link StringBuilder} or a {@link CharBuffer}, without copying it to a String.
+   */
+  public static QRCode encode(CharSequence content,
+                              ErrorCorrectionLevel ecLevel,
+                              Map<EncodeHintType,?> hints) throws WriterException {
+    return encode(content, ecLevel, hints, new EncoderContext());
+  }
+
+  /**
+   * Mike-ADDED: encode {@code length} chars of {@code content} starting at {@code offset}.
+   */
+  public static QRCode encode(char[] content, int offset, int length,
+                              ErrorCorrectionLevel ecLevel,
+                              Map<EncodeHintType,?> hints) throws WriterException {
+    return encode(CharBuffer.wrap(content, offset, length), ecLevel, hints, new EncoderContext());
+  }
+
+  /**
+   * Mike-ADDED: encode already encoded bytes as a single BYTE mode segment.
+   * @see #encode(ByteBuffer, Charset, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  public static QRCode encode(byte[] content, int offset, int length,
+                              Charset eciCharset,
+                              ErrorCorrectionLevel ecLevel,
+                              Map<EncodeHintType,?> hints) throws WriterException {
+    return encode(ByteBuffer.wrap(content, offset, length), eciCharset, ecLevel, hints, new EncoderContext());
+  }
+
+  /**
+   * Mike-ADDED
+   * @see #encode(ByteBuffer, Charset, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  public static QRCode encode(ByteBuffer content,
+                              Charset eciCharset,
+                              ErrorCorrectionLevel ecLevel,
+                              Map<EncodeHintType,?> hints) throws WriterException {
+    return encode(content, eciCharset, ecLevel, hints, new EncoderContext());
+  }
+
+  /**
+   * Mike-ADDED: encode already encoded bytes, from position to limit of {@code content}, as a single BYTE mode segment.
+   * The buffer position is left intact. {@link EncodeHintType#CHARACTER_SET} and {@link EncodeHintType#QR_COMPACT}
+   * hints are ignored.
+   * @param eciCharset charset of the bytes which is declared with an ECI segment,
+   *   {@code null} for no ECI, i.e. ISO-8859-1 by default
+   * @throws WriterException if there is no ECI for {@code eciCharset}, or the bytes don't fit
+   */
+  public static QRCode encode(ByteBuffer content,
+                              Charset eciCharset,
+                              ErrorCorrectionLevel ecLevel,
+                              Map<EncodeHintType,?> hints,
+                              EncoderContext context) throws WriterException {
+    Mode mode = prepare(content, eciCharset, ecLevel, hints, context);
+    return encodePayload(mode, context.version[0], context.headerAndDataBits, ecLevel, hints, context);
+  }
 
+  /**
+   * Mike-ADDED: writes header and data bits to {@code context.headerAndDataBits}, leaving the version
+   * in {@code context.version[0]}.
+   * @return mode of the symbol
+   * @see #encode(ByteBuffer, Charset, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  private static Mode prepare(ByteBuffer content,
+                              Charset eciCharset,
+                              ErrorCorrectionLevel ecLevel,
+                              Map<EncodeHintType,?> hints,
+                              EncoderContext context) throws WriterException {
+    Integer eci = null;
+    if (eciCharset != null) {
+      eci = eciByName(eciCharset.name());
+      if (eci == null) {
+        throw new WriterException("No ECI for " + eciCharset);
+      }
+    }
+    boolean hasGS1FormatHint = hints != null && hints.containsKey(EncodeHintType.GS1_FORMAT) &&
+        Boolean.parseBoolean(hints.get(EncodeHintType.GS1_FORMAT).toString());
+
+    // the size is known without looking at the bytes, so the version is chosen first,
+    // and the bytes are written right after the header
+    int numBytes = content.remaining();
+    if (numBytes >= 1 << 16) {
+      throw new WriterException("Data too big");
+    }
+    int bitsNeeded = (eci != null ? 12 : 0) + (hasGS1FormatHint ? 4 : 0) + 4 + 8 * numBytes; // without count
     int version;
-    BitArray headerAndDataBits;
-    Mode mode;
+    if (hints != null && hints.containsKey(EncodeHintType.QR_VERSION)) {
+      version = Integer.parseInt(hints.get(EncodeHintType.QR_VERSION).toString());
+      if (!willFit(bitsNeeded + Mode.BYTE.getCharacterCountBits(version), version, ecLevel)) {
+        throw new WriterException("Data too big for requested version");
+      }
+    } else {
+      version = chooseVersion(Mode.BYTE, bitsNeeded, ecLevel);
+    }
+
+    BitArray headerAndDataBits = context.headerAndDataBits;
+    headerAndDataBits.reset();
+    if (eci != null) {
+      appendECI(eci, headerAndDataBits);
+    }
+    if (hasGS1FormatHint) {
+      headerAndDataBits.appendBits(Mode.FNC1_FIRST_POSITION.getBits(), 4);
+    }
+    headerAndDataBits.appendBits(Mode.BYTE.getBits(), 4);
+    appendLengthInfo(numBytes, version, Mode.BYTE, headerAndDataBits);
+    appendBytes(content, headerAndDataBits);
+    return prepared(Mode.BYTE, version, context);
+  }
+
+  /**
+   * Mike-ADDED: encode binary data, e.g. a signed token or a compressed blob, as a single BYTE mode segment,
+   * without any mode or charset detection.
+   * {@link EncodeHintType#CHARACTER_SET}, if specified, is declared with an ECI segment.
+   * @see #encode(ByteBuffer, Charset, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  public static QRCode encodeBytes(byte[] content,
+                                   ErrorCorrectionLevel ecLevel,
+                                   Map<EncodeHintType,?> hints) throws WriterException {
+    return encodeBytes(ByteBuffer.wrap(content), ecLevel, hints, new EncoderContext());
+  }
+
+  /**
+   * Mike-ADDED
+   * @see #encodeBytes(byte[], ErrorCorrectionLevel, Map)
+   */
+  public static QRCode encodeBytes(ByteBuffer content,
+                                   ErrorCorrectionLevel ecLevel,
+                                   Map<EncodeHintType,?> hints) throws WriterException {
+    return encodeBytes(content, ecLevel, hints, new EncoderContext());
+  }
+
+  /**
+   * Mike-ADDED
+   * @see #encodeBytes(byte[], ErrorCorrectionLevel, Map)
+   */
+  public static QRCode encodeBytes(ByteBuffer content,
+                                   ErrorCorrectionLevel ecLevel,
+                                   Map<EncodeHintType,?> hints,
+                                   EncoderContext context) throws WriterException {
+    Charset eciCharset = hints != null && hints.containsKey(EncodeHintType.CHARACTER_SET)
+        ? Charset.forName(hints.get(EncodeHintType.CHARACTER_SET).toString()) : null;
+    return encode(content, eciCharset, ecLevel, hints, context);
+  }
+
+  /**
+   * Mike-ADDED: encode text using buffers of the given context.
+   * @see EncoderContext
+   */
+  public static QRCode encode(CharSequence content,
+                              ErrorCorrectionLevel ecLevel,
+                              Map<EncodeHintType,?> hints,
+                              EncoderContext context) throws WriterException {
+    Mode mode = prepare(content, ecLevel, hints, context);
+    return encodePayload(mode, context.version[0], context.headerAndDataBits, ecLevel, hints, context);
+  }
+
+  /**
+   * Mike-ADDED: writes header and data bits to {@code context.headerAndDataBits}, leaving the version
+   * in {@code context.version[0]}.
+   * @return mode of the symbol
+   * @see #encode(CharSequence, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  private static Mode prepare(CharSequence content,
+                              ErrorCorrectionLevel ecLevel,
+                              Map<EncodeHintType,?> hints,
+                              EncoderContext context) throws WriterException {
+
+    // Mike-REMOVED version, headerAndDataBits, mode, the payload is encoded in branches
 
     boolean hasGS1FormatHint = hints != null && hints.containsKey(EncodeHintType.GS1_FORMAT) &&
         Boolean.parseBoolean(hints.get(EncodeHintType.GS1_FORMAT).toString());
     boolean hasCompactionHint = hints != null && hints.containsKey(EncodeHintType.QR_COMPACT) &&
         Boolean.parseBoolean(hints.get(EncodeHintType.QR_COMPACT).toString());
+    boolean hasSegmentationHint = hints != null && hints.containsKey(EncodeHintType.QR_GREEDY_SEGMENTATION) &&
+        Boolean.parseBoolean(hints.get(EncodeHintType.QR_GREEDY_SEGMENTATION).toString());
 
     // Determine what character encoding has been specified by the caller, if any
     Charset encoding = DEFAULT_BYTE_MODE_ENCODING;
@@ -146,31 +343,35 @@ public final class Encoder {
     }
 
     if (hasCompactionHint) {
-      mode = Mode.BYTE;
-
       Charset priorityEncoding = encoding.equals(DEFAULT_BYTE_MODE_ENCODING) ? null : encoding;
       // Mike-CHANGED: getting version to int[], inlined ResultList class
-      int[] tmpVersion = new int[1];
+      int[] tmpVersion = context.version;
       List<MinimalEncoder.ResultNode> rn = // Mike-CHANGED to static call
           MinimalEncoder.encode(content, priorityEncoding, hasGS1FormatHint, ecLevel, tmpVersion);
 
-      headerAndDataBits = new BitArray();
-      version = tmpVersion[0];
+      BitArray headerAndDataBits = context.headerAndDataBits;
+      headerAndDataBits.reset();
+      int version = tmpVersion[0];
 
       // Mike-CHANGED inlined MinimalEncoder.getBits
       for (MinimalEncoder.ResultNode resultNode : rn) { // Mike-CHANGED parameters
-        resultNode.getBits(headerAndDataBits, version);
+        resultNode.getBits(headerAndDataBits, version, context);
       }
+      return prepared(Mode.BYTE, version, context);
+
+    } else if (hasSegmentationHint) { // Mike-ADDED
+      return prepareGreedy(content, encoding, hasEncodingHint, hasGS1FormatHint, ecLevel, hints, context);
 
     } else {
 
       // Pick an encoding mode appropriate for the content. Note that this will not attempt to use
       // multiple modes / segments even if that were more efficient.
-      mode = chooseMode(content, encoding);
+      Mode mode = chooseMode(content, encoding);
 
       // This will store the header information, like mode and
       // length, as well as "header" segments like an ECI segment.
-      BitArray headerBits = new BitArray();
+      BitArray headerBits = context.headerBits;
+      headerBits.reset();
 
       // Append ECI segment if applicable
       if (mode == Mode.BYTE && hasEncodingHint) {
@@ -191,29 +392,371 @@ public final class Encoder {
 
       // Collect data within the main segment, separately, to count its size if needed. Don't add it to
       // main payload yet.
-      BitArray dataBits = new BitArray();
+      BitArray dataBits = context.dataBits;
+      dataBits.reset();
       // Mike-CHANGED: passing range
-      appendBytes(content, 0, content.length(), mode, dataBits, encoding);
+      appendBytes(content, 0, content.length(), mode, dataBits, encoding, context);
+
+      int numLetters = mode == Mode.BYTE ? dataBits.getSizeInBytes() : content.length();
+      return prepareSegment(mode, headerBits, dataBits, numLetters, ecLevel, hints, context);
+    }
+  }
+
+  /**
+   * Mike-ADDED
+   * @see #encodeSegments(List, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  public static QRCode encodeSegments(List<Segment> segments,
+                                      ErrorCorrectionLevel ecLevel,
+                                      Map<EncodeHintType,?> hints) throws WriterException {
+    return encodeSegments(segments, ecLevel, hints, new EncoderContext());
+  }
 
-      if (hints != null && hints.containsKey(EncodeHintType.QR_VERSION)) {
-        version = Integer.parseInt(hints.get(EncodeHintType.QR_VERSION).toString());
-        int bitsNeeded = calculateBitsNeeded(mode, headerBits, dataBits, version);
-        if (!willFit(bitsNeeded, version, ecLevel)) {
-          throw new WriterException("Data too big for requested version");
+  /**
+   * Mike-ADDED: encode caller-specified segments as is, without any mode or charset detection.
+   * The version is computed exactly from segment sizes.
+   * {@link EncodeHintType#GS1_FORMAT} adds FNC1 in first position after the ECI of the first segment, if any;
+   * {@link EncodeHintType#CHARACTER_SET}, {@link EncodeHintType#QR_COMPACT}, and
+   * {@link EncodeHintType#QR_GREEDY_SEGMENTATION} hints are ignored.
+   * @throws WriterException if segments don't fit
+   */
+  public static QRCode encodeSegments(List<Segment> segments,
+                                      ErrorCorrectionLevel ecLevel,
+                                      Map<EncodeHintType,?> hints,
+                                      EncoderContext context) throws WriterException {
+    Mode mode = prepare(segments, ecLevel, hints, context);
+    return encodePayload(mode, context.version[0], context.headerAndDataBits, ecLevel, hints, context);
+  }
+
+  /**
+   * Mike-ADDED: writes header and data bits to {@code context.headerAndDataBits}, leaving the version
+   * in {@code context.version[0]}.
+   * @return mode of the symbol
+   * @see #encodeSegments(List, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  private static Mode prepare(List<Segment> segments,
+                              ErrorCorrectionLevel ecLevel,
+                              Map<EncodeHintType,?> hints,
+                              EncoderContext context) throws WriterException {
+    boolean hasGS1FormatHint = hints != null && hints.containsKey(EncodeHintType.GS1_FORMAT) &&
+        Boolean.parseBoolean(hints.get(EncodeHintType.GS1_FORMAT).toString());
+    int bitsWithoutCounts = segmentBits(segments, hasGS1FormatHint);
+    int version;
+    if (hints != null && hints.containsKey(EncodeHintType.QR_VERSION)) {
+      version = Integer.parseInt(hints.get(EncodeHintType.QR_VERSION).toString());
+      int bitsNeeded = segmentBits(segments, bitsWithoutCounts, version);
+      if (bitsNeeded < 0 || !willFit(bitsNeeded, version, ecLevel)) {
+        throw new WriterException("Data too big for requested version");
+      }
+    } else {
+      version = chooseVersion(segments, bitsWithoutCounts, ecLevel);
+    }
+
+    BitArray headerAndDataBits = context.headerAndDataBits;
+    headerAndDataBits.reset();
+    appendSegments(segments, hasGS1FormatHint, version, headerAndDataBits);
+    Mode mode = segments.size() == 1 ? segments.get(0).mode : Mode.BYTE;
+    return prepared(mode, version, context);
+  }
+
+  /**
+   * Mike-ADDED
+   * @see #plan(CharSequence, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  public static EncodePlan plan(CharSequence content,
+                                ErrorCorrectionLevel ecLevel,
+                                Map<EncodeHintType,?> hints) throws WriterException {
+    return plan(content, ecLevel, hints, new EncoderContext());
+  }
+
+  /**
+   * Mike-ADDED: choose segments and version as
+   * {@link #encode(CharSequence, ErrorCorrectionLevel, Map, EncoderContext)} does,
+   * without error correction, placement, and masking. See {@link EncodePlan#execute(EncoderContext)}.
+   * @throws WriterException if content doesn't fit
+   */
+  public static EncodePlan plan(CharSequence content,
+                                ErrorCorrectionLevel ecLevel,
+                                Map<EncodeHintType,?> hints,
+                                EncoderContext context) throws WriterException {
+    Mode mode = prepare(content, ecLevel, hints, context);
+    return plan(mode, ecLevel, hints, context);
+  }
+
+  /**
+   * Mike-ADDED
+   * @see #plan(ByteBuffer, Charset, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  public static EncodePlan plan(ByteBuffer content,
+                                Charset eciCharset,
+                                ErrorCorrectionLevel ecLevel,
+                                Map<EncodeHintType,?> hints) throws WriterException {
+    return plan(content, eciCharset, ecLevel, hints, new EncoderContext());
+  }
+
+  /**
+   * Mike-ADDED
+   * @see #encode(ByteBuffer, Charset, ErrorCorrectionLevel, Map, EncoderContext)
+   * @see #plan(CharSequence, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  public static EncodePlan plan(ByteBuffer content,
+                                Charset eciCharset,
+                                ErrorCorrectionLevel ecLevel,
+                                Map<EncodeHintType,?> hints,
+                                EncoderContext context) throws WriterException {
+    Mode mode = prepare(content, eciCharset, ecLevel, hints, context);
+    return plan(mode, ecLevel, hints, context);
+  }
+
+  /**
+   * Mike-ADDED
+   * @see #encodeSegments(List, ErrorCorrectionLevel, Map, EncoderContext)
+   * @see #plan(CharSequence, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  public static EncodePlan planSegments(List<Segment> segments,
+                                        ErrorCorrectionLevel ecLevel,
+                                        Map<EncodeHintType,?> hints) throws WriterException {
+    return planSegments(segments, ecLevel, hints, new EncoderContext());
+  }
+
+  /**
+   * Mike-ADDED
+   * @see #encodeSegments(List, ErrorCorrectionLevel, Map, EncoderContext)
+   * @see #plan(CharSequence, ErrorCorrectionLevel, Map, EncoderContext)
+   */
+  public static EncodePlan planSegments(List<Segment> segments,
+                                        ErrorCorrectionLevel ecLevel,
+                                        Map<EncodeHintType,?> hints,
+                                        EncoderContext context) throws WriterException {
+    Mode mode = prepare(segments, ecLevel, hints, context);
+    return plan(mode, ecLevel, hints, context);
+  }
+
+  private static EncodePlan plan(Mode mode, ErrorCorrectionLevel ecLevel, Map<EncodeHintType,?> hints,
+                                 EncoderContext context) {
+    return new EncodePlan(mode, ecLevel, context.version[0], context.headerAndDataBits,
+        maskPatternHint(hints), maskExecutorHint(hints));
+  }
+
+  /**
+   * Mike-ADDED
+   * @return bits taken by segments, their modes, ECIs, and FNC1, but not character counts
+   */
+  static int segmentBits(List<Segment> segments, boolean gs1) {
+    int bits = gs1 ? 4 : 0;
+    int eci = Segment.DEFAULT_ECI;
+    for (int i = 0, size = segments.size(); i < size; i++) {
+      Segment segment = segments.get(i);
+      if (segment.eci != -1 && segment.eci != eci) {
+        bits += 12;
+        eci = segment.eci;
+      }
+      bits += 4 + segment.data.getSize();
+    }
+    return bits;
+  }
+
+  /**
+   * Mike-ADDED
+   * @return bits taken by segments in the version, -1 if a character count doesn't fit
+   */
+  static int segmentBits(List<Segment> segments, int bitsWithoutCounts, int version) {
+    int bits = bitsWithoutCounts;
+    for (int i = 0, size = segments.size(); i < size; i++) {
+      Segment segment = segments.get(i);
+      int countBits = segment.mode.getCharacterCountBits(version);
+      if (segment.numLetters >= 1 << countBits) {
+        return -1;
+      }
+      bits += countBits;
+    }
+    return bits;
+  }
+
+  /**
+   * Mike-ADDED: the smallest version which fits segments, character count widths change at versions 10 and 27.
+   */
+  static int chooseVersion(List<Segment> segments, int bitsWithoutCounts, ErrorCorrectionLevel ecLevel)
+      throws WriterException {
+    int bitsNeeded = -1;
+    for (int version = 1; version <= 40; version++) {
+      if (version == 1 || version == 10 || version == 27) {
+        bitsNeeded = segmentBits(segments, bitsWithoutCounts, version);
+      }
+      if (bitsNeeded >= 0 && willFit(bitsNeeded, version, ecLevel)) {
+        return version;
+      }
+    }
+    throw new WriterException("Data too big");
+  }
+
+  /**
+   * Mike-ADDED: append segments, switching ECI when needed, as sized by {@link #segmentBits(List, boolean)}.
+   */
+  static void appendSegments(List<Segment> segments, boolean gs1, int version, BitArray bits)
+      throws WriterException {
+    int eci = Segment.DEFAULT_ECI;
+    for (int i = 0, size = segments.size(); i < size; i++) {
+      Segment segment = segments.get(i);
+      if (segment.eci != -1 && segment.eci != eci) {
+        appendECI(segment.eci, bits);
+        eci = segment.eci;
+      }
+      if (i == 0 && gs1) {
+        bits.appendBits(Mode.FNC1_FIRST_POSITION.getBits(), 4);
+      }
+      bits.appendBits(segment.mode.getBits(), 4);
+      appendLengthInfo(segment.numLetters, version, segment.mode, bits);
+      bits.appendBitArray(segment.data);
+    }
+    if (segments.isEmpty() && gs1) {
+      bits.appendBits(Mode.FNC1_FIRST_POSITION.getBits(), 4);
+    }
+  }
+
+  /**
+   * Mike-ADDED: segments content with {@link GreedyEncoder} for the smallest version class it fits in, and writes it.
+   * Character count bits are the same for all versions of a class, so bits are written once per class tried.
+   */
+  private static Mode prepareGreedy(CharSequence content, Charset encoding,
+                                    boolean hasEncodingHint, boolean hasGS1FormatHint,
+                                    ErrorCorrectionLevel ecLevel,
+                                    Map<EncodeHintType,?> hints,
+                                    EncoderContext context) throws WriterException {
+    int length = content.length();
+    boolean kanji = SHIFT_JIS_CHARSET.equals(encoding);
+    Integer eci = hasEncodingHint ? eciByName(encoding.name()) : null;
+    boolean hasVersionHint = hints != null && hints.containsKey(EncodeHintType.QR_VERSION);
+    int requestedVersion = hasVersionHint ? Integer.parseInt(hints.get(EncodeHintType.QR_VERSION).toString()) : 0;
+    int[] segments = context.segments(Math.max(length, 1));
+    BitArray headerAndDataBits = context.headerAndDataBits;
+    BitArray dataBits = context.dataBits;
+
+    int firstClass = !hasVersionHint || requestedVersion <= 9 ? 0 : requestedVersion <= 26 ? 1 : 2;
+    int lastClass = hasVersionHint ? firstClass : 2;
+    classes:
+    for (int versionClass = firstClass; versionClass <= lastClass; versionClass++) {
+      int maxVersion = versionClass == 0 ? 9 : versionClass == 1 ? 26 : 40;
+      int count = GreedyEncoder.segment(content, kanji, versionClass, segments);
+
+      headerAndDataBits.reset();
+      if (eci != null) {
+        for (int s = 0; s < count; s++) {
+          if ((segments[s] & 3) == 3) { // ECI is needed for BYTE segments only
+            appendECI(eci, headerAndDataBits);
+            break;
+          }
         }
-      } else {
-        version = recommendVersion(ecLevel, mode, headerBits, dataBits);
+      }
+      if (hasGS1FormatHint) {
+        headerAndDataBits.appendBits(Mode.FNC1_FIRST_POSITION.getBits(), 4);
+      }
+      for (int s = 0; s < count; s++) {
+        Mode mode = MinimalEncoder.MODES[segments[s] & 3];
+        int start = segments[s] >>> 2;
+        int end = s + 1 < count ? segments[s + 1] >>> 2 : length;
+        dataBits.reset();
+        appendBytes(content, start, end, mode, dataBits, encoding, context);
+        int numLetters = mode == Mode.BYTE ? dataBits.getSizeInBytes() : end - start;
+        if (numLetters >= 1 << mode.getCharacterCountBits(maxVersion)) {
+          continue classes; // too long for this class anyway
+        }
+        headerAndDataBits.appendBits(mode.getBits(), 4);
+        appendLengthInfo(numLetters, maxVersion, mode, headerAndDataBits);
+        headerAndDataBits.appendBitArray(dataBits);
       }
 
-      headerAndDataBits = new BitArray();
-      headerAndDataBits.appendBitArray(headerBits);
-      // Find "length" of main segment and write it
-      int numLetters = mode == Mode.BYTE ? dataBits.getSizeInBytes() : content.length();
-      appendLengthInfo(numLetters, version, mode, headerAndDataBits);
-      // Put data together into the overall payload
-      headerAndDataBits.appendBitArray(dataBits);
+      Mode mode = count == 1 ? MinimalEncoder.MODES[segments[0] & 3] : Mode.BYTE;
+      int bitsNeeded = headerAndDataBits.getSize();
+      if (hasVersionHint) {
+        if (willFit(bitsNeeded, requestedVersion, ecLevel)) {
+          return prepared(mode, requestedVersion, context);
+        }
+        break;
+      }
+      for (int version = versionClass == 0 ? 1 : versionClass == 1 ? 10 : 27; version <= maxVersion; version++) {
+        if (willFit(bitsNeeded, version, ecLevel)) {
+          return prepared(mode, version, context);
+        }
+      }
     }
+    throw new WriterException(hasVersionHint ? "Data too big for requested version" : "Data too big");
+  }
 
+  /**
+   * Mike-ADDED: chooses a version for a single segment and writes it.
+   */
+  private static Mode prepareSegment(Mode mode, BitArray headerBits, BitArray dataBits, int numLetters,
+                                     ErrorCorrectionLevel ecLevel,
+                                     Map<EncodeHintType,?> hints,
+                                     EncoderContext context) throws WriterException {
+    int version;
+    if (hints != null && hints.containsKey(EncodeHintType.QR_VERSION)) {
+      version = Integer.parseInt(hints.get(EncodeHintType.QR_VERSION).toString());
+      int bitsNeeded = calculateBitsNeeded(mode, headerBits, dataBits, version);
+      if (!willFit(bitsNeeded, version, ecLevel)) {
+        throw new WriterException("Data too big for requested version");
+      }
+    } else {
+      version = recommendVersion(ecLevel, mode, headerBits, dataBits);
+    }
+
+    BitArray headerAndDataBits = context.headerAndDataBits;
+    headerAndDataBits.reset();
+    headerAndDataBits.appendBitArray(headerBits);
+    // Find "length" of main segment and write it
+    appendLengthInfo(numLetters, version, mode, headerAndDataBits);
+    // Put data together into the overall payload
+    headerAndDataBits.appendBitArray(dataBits);
+    return prepared(mode, version, context);
+  }
+
+  /**
+   * Mike-ADDED: records the version chosen for the payload written to {@code context}.
+   */
+  private static Mode prepared(Mode mode, int version, EncoderContext context) {
+    context.version[0] = version;
+    return mode;
+  }
+
+  /**
+   * Mike-ADDED: error correction, placement and masking of the payload.
+   */
+  private static QRCode encodePayload(Mode mode, int version, BitArray headerAndDataBits,
+                                      ErrorCorrectionLevel ecLevel,
+                                      Map<EncodeHintType,?> hints,
+                                      EncoderContext context) throws WriterException {
+    return encodePayload(mode, version, headerAndDataBits, ecLevel, maskPatternHint(hints), maskExecutorHint(hints),
+        context);
+  }
+
+  /**
+   * Mike-ADDED: manual selection of the pattern to be used via hint
+   * @return -1 for automatic selection
+   */
+  static int maskPatternHint(Map<EncodeHintType,?> hints) {
+    int maskPattern = -1;
+    if (hints != null && hints.containsKey(EncodeHintType.QR_MASK_PATTERN)) {
+      int hintMaskPattern = Integer.parseInt(hints.get(EncodeHintType.QR_MASK_PATTERN).toString());
+      maskPattern = QRCode.isValidMaskPattern(hintMaskPattern) ? hintMaskPattern : -1;
+    }
+    return maskPattern;
+  }
+
+  static Executor maskExecutorHint(Map<EncodeHintType,?> hints) { // Mike-ADDED
+    return hints == null ? null : (Executor) hints.get(EncodeHintType.QR_MASK_EXECUTOR);
+  }
+
+  /**
+   * Mike-CHANGED: accepts parsed hints, terminates {@code headerAndDataBits} in place
+   * @param maskPattern -1 to choose the best one
+   * @param executor to evaluate mask patterns on, {@code null} to do it in this thread
+   */
+  static QRCode encodePayload(Mode mode, int version, BitArray headerAndDataBits,
+                              ErrorCorrectionLevel ecLevel,
+                              int maskPattern,
+                              Executor executor,
+                              EncoderContext context) throws WriterException {
     int totalCodewords = totalCodewordsForVersion(version);
     int numDataBytes = totalCodewords - totalECCodewordsForVersion(version, ecLevel);
 
@@ -221,8 +764,10 @@ public final class Encoder {
     terminateBits(numDataBytes, headerAndDataBits);
 
     // Interleave data bits with error correction code.
-    BitArray finalBits = interleaveWithECBytes(
-        headerAndDataBits, totalCodewords, numDataBytes, numBlocksForVersion(version, ecLevel));
+    VersionTemplate template = VersionTemplate.forVersion(version);
+    byte[] codewords = context.codewords(totalCodewords);
+    interleaveWithECBytes(headerAndDataBits, totalCodewords, numDataBytes, numBlocksForVersion(version, ecLevel),
+        template.interleaveOrder[ecLevel.ordinal()], context.blocks(totalCodewords), codewords);
 
     // Mike-MOVED QRCode object creation from here
 
@@ -230,19 +775,22 @@ public final class Encoder {
     int dimension = dimensionForVersion(version);
     ByteMatrix matrix = new ByteMatrix(dimension, dimension);
 
-    // Enable manual selection of the pattern to be used via hint
-    int maskPattern = -1;
-    if (hints != null && hints.containsKey(EncodeHintType.QR_MASK_PATTERN)) {
-      int hintMaskPattern = Integer.parseInt(hints.get(EncodeHintType.QR_MASK_PATTERN).toString());
-      maskPattern = QRCode.isValidMaskPattern(hintMaskPattern) ? hintMaskPattern : -1;
-    }
+    // Mike-MOVED manual selection of the pattern to maskPatternHint
+
+    // Mike-CHANGED: function patterns and data are placed once, then every candidate mask is just XOR-ed
+    context.setDimension(dimension);
+    ByteMatrix unmasked = context.unmasked();
+    MatrixUtil.buildUnmaskedMatrix(codewords, totalCodewords, version, unmasked);
+    long[][] maskBoards = template.maskBoards(); // held until the matrix is built
 
     if (maskPattern == -1) {
-      maskPattern = chooseMaskPattern(finalBits, ecLevel, version, matrix);
+      maskPattern = executor == null
+          ? chooseMaskPattern(unmasked, maskBoards, ecLevel, context)
+          : chooseMaskPattern(unmasked, maskBoards, ecLevel, context, executor);
     }
 
     // Build the matrix and set it to "qrCode".
-    MatrixUtil.buildMatrix(finalBits, ecLevel, version, maskPattern, matrix);
+    MatrixUtil.applyMask(unmasked, maskBoards[maskPattern], ecLevel, maskPattern, matrix);
 
     // Mike-MOVED QRCode object creation here
     return new QRCode(mode, ecLevel, version, maskPattern, matrix);
@@ -289,7 +837,7 @@ public final class Encoder {
    * Choose the best mode by examining the content. Note that 'encoding' is used as a hint;
    * if it is Shift_JIS, and the input is only double-byte Kanji, then we return {@link Mode#KANJI}.
    */
-  static Mode chooseMode(String content, Charset encoding) { // Mike-CHANGED: unprivated
+  static Mode chooseMode(CharSequence content, Charset encoding) { // Mike-CHANGED: unprivated, accepting CharSequence
     if (SHIFT_JIS_CHARSET.equals(encoding) && isOnlyDoubleByteKanji(content)) {
       // Choose Kanji mode if all input are double-byte characters
       return Mode.KANJI;
@@ -315,32 +863,113 @@ public final class Encoder {
     return Mode.BYTE;
   }
 
-  static boolean isOnlyDoubleByteKanji(String content) {
-    byte[] bytes = content.getBytes(SHIFT_JIS_CHARSET);
-    int length = bytes.length;
-    if (length % 2 != 0) {
-      return false;
-    }
-    for (int i = 0; i < length; i += 2) {
-      int byte1 = bytes[i] & 0xFF;
-      if ((byte1 < 0x81 || byte1 > 0x9F) && (byte1 < 0xE0 || byte1 > 0xEB)) {
+  static boolean isOnlyDoubleByteKanji(CharSequence content) { // Mike-CHANGED: table lookup per char
+    for (int i = 0, length = content.length(); i < length; i++) {
+      if (kanjiCode(content.charAt(i)) == -1) {
         return false;
       }
     }
     return true;
   }
 
-  private static int chooseMaskPattern(BitArray bits,
-                                       ErrorCorrectionLevel ecLevel,
-                                       int version,
-                                       ByteMatrix matrix) throws WriterException {
+  /**
+   * Mike-ADDED: 13-bit Kanji mode value of a character whose Shift_JIS form is in 0x8140-0x9FFC or 0xE040-0xEBBF,
+   * see 8.4.5 of JISX0510:2004 (p.21), or -1 for any other character.
+   */
+  static int kanjiCode(char c) {
+    return KanjiTable.PAGES[c >>> 8][c & 0xFF] - 1;
+  }
+
+  // Mike-ADDED: built on first use. Two levels, 256 pages by high byte of char, the ones without Kanji are shared;
+  // every element is Kanji mode value + 1, or 0 for other characters.
+  // Every double-byte code of the ranges is decoded, and the character is taken if it is encoded back to the same code.
+  private static final class KanjiTable {
+    static final char[][] PAGES = new char[256][];
+
+    static {
+      CharsetDecoder decoder = SHIFT_JIS_CHARSET.newDecoder();
+      CharsetEncoder encoder = SHIFT_JIS_CHARSET.newEncoder();
+      ByteBuffer code = ByteBuffer.allocate(2);
+      CharBuffer chars = CharBuffer.allocate(2);
+      ByteBuffer back = ByteBuffer.allocate(4);
+      for (int lead = 0x81; lead <= 0xEB; lead = lead == 0x9F ? 0xE0 : lead + 1) {
+        for (int trail = 0x40; trail <= (lead == 0xEB ? 0xBF : 0xFC); trail++) {
+          ((Buffer) code).clear();
+          code.put((byte) lead).put((byte) trail);
+          ((Buffer) code).flip();
+          ((Buffer) chars).clear();
+          decoder.reset();
+          if (!decoder.decode(code, chars, true).isUnderflow() || !decoder.flush(chars).isUnderflow() ||
+              chars.position() != 1) {
+            continue;
+          }
+          ((Buffer) chars).flip();
+          ((Buffer) back).clear();
+          encoder.reset();
+          if (!encoder.encode(chars, back, true).isUnderflow() || !encoder.flush(back).isUnderflow() ||
+              back.position() != 2 || back.get(0) != (byte) lead || back.get(1) != (byte) trail) {
+            continue;
+          }
+          char c = chars.get(0);
+          char[] page = PAGES[c >>> 8];
+          if (page == null) {
+            page = PAGES[c >>> 8] = new char[256];
+          }
+          int subtracted = ((lead << 8) | trail) - (lead <= 0x9F ? 0x8140 : 0xc140);
+          page[c & 0xFF] = (char) (((subtracted >> 8) * 0xc0) + (subtracted & 0xff) + 1);
+        }
+      }
+      char[] empty = new char[256];
+      for (int i = 0; i < PAGES.length; i++) {
+        if (PAGES[i] == null) {
+          PAGES[i] = empty;
+        }
+      }
+    }
+  }
+
+  /**
+   * Mike-ADDED: an encoder which replaces unmappable characters, like {@link String#getBytes(Charset)} does.
+   */
+  static CharsetEncoder newEncoder(Charset charset) {
+    return charset.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+  /**
+   * Mike-ADDED: encodes next chunk of {@code in} to {@code out}, which is in read mode and keeps its unread bytes.
+   * @return whether there are more bytes to encode
+   */
+  private static boolean encode(CharsetEncoder encoder, CharBuffer in, ByteBuffer out) {
+    out.compact();
+    CoderResult result = encoder.encode(in, out, true);
+    if (result.isUnderflow()) {
+      result = encoder.flush(out);
+    }
+    ((Buffer) out).flip(); // Buffer.flip(), ByteBuffer.flip() doesn't exist on Java 8
+    return result.isOverflow();
+  }
+
+  // Mike-CHANGED: accepting unmasked matrix and mask bitboards of its version, unprivated.
+  // Masks are applied to bitboards of the unmasked matrix, no per-mask matrix is built.
+  static int chooseMaskPattern(ByteMatrix unmasked,
+                               long[][] maskBoards,
+                               ErrorCorrectionLevel ecLevel,
+                               EncoderContext context) throws WriterException {
 
     int minPenalty = Integer.MAX_VALUE;  // Lower penalty is better.
     int bestMaskPattern = -1;
+    int dimension = unmasked.width;
+    long[] unmaskedRows = context.unmaskedRows();
+    long[] unmaskedColumns = context.unmaskedColumns();
+    MaskUtil.toBitboards(unmasked, unmaskedRows, unmaskedColumns);
+    long[] rows = context.rows();
+    long[] columns = context.columns();
     // We try all mask patterns to choose the best one.
     for (int maskPattern = 0; maskPattern < QRCode.NUM_MASK_PATTERNS; maskPattern++) {
-      MatrixUtil.buildMatrix(bits, ecLevel, version, maskPattern, matrix);
-      int penalty = calculateMaskPenalty(matrix);
+      int penalty = calculateMaskPenalty(unmaskedRows, unmaskedColumns, maskBoards, ecLevel, maskPattern, dimension,
+          rows, columns);
       if (penalty < minPenalty) {
         minPenalty = penalty;
         bestMaskPattern = maskPattern;
@@ -349,6 +978,120 @@ public final class Encoder {
     return bestMaskPattern;
   }
 
+  // Mike-ADDED: evaluates every mask pattern on its own bitboards, all but the first one on the executor.
+  // Ties are resolved towards the lowest mask pattern, just like in sequential evaluation.
+  private static int chooseMaskPattern(ByteMatrix unmasked,
+                                       long[][] maskBoards,
+                                       ErrorCorrectionLevel ecLevel,
+                                       EncoderContext context,
+                                       Executor executor) throws WriterException {
+    long[] unmaskedRows = context.unmaskedRows();
+    long[] unmaskedColumns = context.unmaskedColumns();
+    MaskUtil.toBitboards(unmasked, unmaskedRows, unmaskedColumns);
+    CountDownLatch done = new CountDownLatch(QRCode.NUM_MASK_PATTERNS - 1);
+    MaskEvaluation[] evaluations = new MaskEvaluation[QRCode.NUM_MASK_PATTERNS];
+    for (int maskPattern = QRCode.NUM_MASK_PATTERNS - 1; maskPattern >= 0; maskPattern--) {
+      MaskEvaluation evaluation = evaluations[maskPattern] =
+          new MaskEvaluation(unmaskedRows, unmaskedColumns, maskBoards, ecLevel, maskPattern, unmasked.width,
+              maskPattern == 0 ? null : done);
+      if (maskPattern == 0) {
+        evaluation.run();
+      } else {
+        try {
+          executor.execute(evaluation);
+        } catch (RejectedExecutionException e) {
+          evaluation.run();
+        }
+      }
+    }
+    // Run evaluations nobody has started yet, so the executor may even be the one this thread belongs to:
+    // queued evaluations can't leave this thread waiting for a pool whose every worker waits the same way.
+    for (int maskPattern = 1; maskPattern < QRCode.NUM_MASK_PATTERNS; maskPattern++) {
+      evaluations[maskPattern].run();
+    }
+    try {
+      // only for evaluations already running on other threads; a pool worker lets its pool compensate meanwhile
+      ForkJoinPool.managedBlock(new LatchBlocker(done));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WriterException("Interrupted while choosing mask pattern");
+    }
+
+    int minPenalty = Integer.MAX_VALUE;
+    int bestMaskPattern = -1;
+    for (MaskEvaluation evaluation : evaluations) {
+      if (evaluation.failure instanceof WriterException) {
+        throw (WriterException) evaluation.failure;
+      } else if (evaluation.failure instanceof RuntimeException) {
+        throw (RuntimeException) evaluation.failure;
+      } else if (evaluation.failure != null) {
+        throw (Error) evaluation.failure;
+      }
+      if (evaluation.penalty < minPenalty) {
+        minPenalty = evaluation.penalty;
+        bestMaskPattern = evaluation.maskPattern;
+      }
+    }
+    return bestMaskPattern;
+  }
+
+  // Mike-ADDED: run once, by whoever claims it first, the executor or the thread choosing the mask
+  private static final class MaskEvaluation implements Runnable {
+    private final long[] unmaskedRows;
+    private final long[] unmaskedColumns;
+    private final long[][] maskBoards;
+    private final ErrorCorrectionLevel ecLevel;
+    final int maskPattern;
+    private final int dimension;
+    private final CountDownLatch done;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    int penalty; // published by done.countDown()
+    Throwable failure;
+
+    MaskEvaluation(long[] unmaskedRows, long[] unmaskedColumns, long[][] maskBoards, ErrorCorrectionLevel ecLevel,
+                   int maskPattern, int dimension, CountDownLatch done) {
+      this.unmaskedRows = unmaskedRows;
+      this.unmaskedColumns = unmaskedColumns;
+      this.maskBoards = maskBoards;
+      this.ecLevel = ecLevel;
+      this.maskPattern = maskPattern;
+      this.dimension = dimension;
+      this.done = done;
+    }
+
+    @Override public void run() {
+      if (!claimed.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        penalty = calculateMaskPenalty(unmaskedRows, unmaskedColumns, maskBoards, ecLevel, maskPattern, dimension,
+            newBitboard(dimension), newBitboard(dimension));
+      } catch (Throwable t) {
+        failure = t;
+      } finally {
+        if (done != null) done.countDown();
+      }
+    }
+  }
+
+  // Mike-ADDED: waits for a latch; outside of a ForkJoinPool, managedBlock just calls block()
+  private static final class LatchBlocker implements ForkJoinPool.ManagedBlocker {
+    private final CountDownLatch latch;
+
+    LatchBlocker(CountDownLatch latch) {
+      this.latch = latch;
+    }
+
+    @Override public boolean block() throws InterruptedException {
+      latch.await();
+      return true;
+    }
+
+    @Override public boolean isReleasable() {
+      return latch.getCount() == 0;
+    }
+  }
+
   private static int chooseVersion(int numInputBits, ErrorCorrectionLevel ecLevel) throws WriterException {
     for (int version = 1; version <= 40; version++) {
       if (willFit(numInputBits, version, ecLevel)) {
@@ -358,6 +1101,19 @@ public final class Encoder {
     throw new WriterException("Data too big");
   }
 
+  /**
+   * Mike-ADDED: the smallest version which fits a single segment, adding character count width of every version.
+   * @param numInputBits all the bits except character count
+   */
+  private static int chooseVersion(Mode mode, int numInputBits, ErrorCorrectionLevel ecLevel) throws WriterException {
+    for (int version = 1; version <= 40; version++) {
+      if (willFit(numInputBits + mode.getCharacterCountBits(version), version, ecLevel)) {
+        return version;
+      }
+    }
+    throw new WriterException("Data too big");
+  }
+
   /**
    * @return true if the number of input bits will fit in a code with the specified version and
    * error correction level.
@@ -384,21 +1140,20 @@ public final class Encoder {
           capacity);
     }
     // Append Mode.TERMINATE if there is enough space (value is 0000)
-    for (int i = 0; i < 4 && bits.getSize() < capacity; ++i) {
-      bits.appendBit(false);
-    }
+    bits.appendBits(0, Math.min(4, capacity - bits.getSize())); // Mike-CHANGED: at once
     // Append termination bits. See 8.4.8 of JISX0510:2004 (p.24) for details.
     // If the last byte isn't 8-bit aligned, we'll add padding bits.
     int numBitsInLastByte = bits.getSize() & 0x07;
     if (numBitsInLastByte > 0) {
-      for (int i = numBitsInLastByte; i < 8; i++) {
-        bits.appendBit(false);
-      }
+      bits.appendBits(0, 8 - numBitsInLastByte); // Mike-CHANGED: at once
     }
     // If we have more space, we'll fill the space with padding patterns defined in 8.4.9 (p.24).
     int numPaddingBytes = numDataBytes - bits.getSizeInBytes();
-    for (int i = 0; i < numPaddingBytes; ++i) {
-      bits.appendBits((i & 0x01) == 0 ? 0xEC : 0x11, 8);
+    for (int i = 0; i + 1 < numPaddingBytes; i += 2) { // Mike-CHANGED: by pairs
+      bits.appendBits(0xEC11, 16);
+    }
+    if ((numPaddingBytes & 1) != 0) {
+      bits.appendBits(0xEC, 8);
     }
     if (bits.getSize() != capacity) {
       throw new WriterException("Bits size does not equal capacity");
@@ -462,84 +1217,122 @@ public final class Encoder {
                                         int numTotalBytes,
                                         int numDataBytes,
                                         int numRSBlocks) throws WriterException {
+    byte[] codewords = new byte[numTotalBytes];
+    interleaveWithECBytes(bits, numTotalBytes, numDataBytes, numRSBlocks,
+        interleaveOrder(numTotalBytes, numDataBytes, numRSBlocks), new byte[numTotalBytes], codewords);
+    BitArray result = new BitArray();
+    result.appendBytes(codewords, 0, numTotalBytes);
+    return result;
+  }
+
+  // Mike-CHANGED: blocks are kept in a single "blocks" buffer of at least numTotalBytes,
+  // all data blocks one after another, followed by all error correction blocks;
+  // then codewords are gathered into "result" in the order given by interleaveOrder()
+  static void interleaveWithECBytes(BitArray bits,
+                                    int numTotalBytes,
+                                    int numDataBytes,
+                                    int numRSBlocks,
+                                    short[] order,
+                                    byte[] blocks,
+                                    byte[] result) throws WriterException {
 
     // "bits" must have "getNumDataBytes" bytes of data.
     if (bits.getSizeInBytes() != numDataBytes) {
       throw new WriterException("Number of bits and data bytes does not match");
     }
 
-    // Step 1.  Divide data bytes into blocks and generate error correction bytes for them. We'll
-    // store the divided data bytes blocks and error correction bytes blocks into "blocks".
+    // Step 1.  Divide data bytes into blocks and generate error correction bytes for them.
+    bits.toBytes(0, blocks, 0, numDataBytes);
     int dataBytesOffset = 0;
-    int maxNumDataBytes = 0;
-    int maxNumEcBytes = 0;
-
-    // Since, we know the number of reedsolmon blocks, we can initialize the vector with the number.
-    // Mike-CHANGED using pre-sized byte[][] instead of ArrayList<struct<byte[], byte[]>>
-    byte[][] blocks = new byte[2 * numRSBlocks][];
-
     for (int i = 0; i < numRSBlocks; ++i) {
       long pair = getNumDataBytesAndNumECBytesForBlockID(
           numTotalBytes, numDataBytes, numRSBlocks, i);
       int size = (int) (pair >>> 32);
-      int numEcBytesInBlock = (int) pair;
+      int numEcBytesInBlock = (int) pair; // the same for all blocks
 
-      byte[] dataBytes = new byte[size];
-      bits.toBytes(8 * dataBytesOffset, dataBytes, 0, size);
-      byte[] ecBytes = generateECBytes(dataBytes, numEcBytesInBlock);
-      blocks[i] = dataBytes;
-      blocks[numRSBlocks + i] = ecBytes;
-
-      maxNumDataBytes = Math.max(maxNumDataBytes, size);
-      maxNumEcBytes = Math.max(maxNumEcBytes, ecBytes.length);
+      generateECBytes(blocks, dataBytesOffset, size,
+          blocks, numDataBytes + i * numEcBytesInBlock, numEcBytesInBlock);
       dataBytesOffset += size;
     }
     if (numDataBytes != dataBytesOffset) {
       throw new WriterException("Data bytes does not match offset");
     }
 
-    BitArray result = new BitArray();
-
-    // First, place data blocks.
-    append(result, maxNumDataBytes, blocks, 0, numRSBlocks); // Mike-CHANGED: outlined loops
-    // Then, place error correction blocks.
-    append(result, maxNumEcBytes, blocks, numRSBlocks, 2 * numRSBlocks);
-    if (numTotalBytes != result.getSizeInBytes()) {  // Should be same.
+    // Step 2.  Interleave.
+    if (numTotalBytes != order.length) {  // Should be same.
       throw new WriterException("Interleaving error: " + numTotalBytes + " and " +
-          result.getSizeInBytes() + " differ.");
+          order.length + " differ.");
+    }
+    for (int i = 0; i < numTotalBytes; i++) {
+      result[i] = blocks[order[i]];
     }
-
-    return result;
   }
 
-  // Mike-ADDED outlined method
-  private static void append(BitArray result, int max, byte[][] blocks, int start, int endEx) { // Mike-ADDED
-    for (int i = 0; i < max; ++i) {
-      for (int j = start; j < endEx; j++) {
-        byte[] bytes = blocks[j];
-        if (i < bytes.length) {
-          result.appendBits(bytes[i], 8);
-        }
+  /**
+   * Mike-ADDED: indices of codewords within the block buffer of {@link #interleaveWithECBytes},
+   * in the order they are transmitted. Depends on version and EC level only, so {@link VersionTemplate} keeps them.
+   */
+  static short[] interleaveOrder(int numTotalBytes, int numDataBytes, int numRSBlocks) {
+    short[] order = new short[numTotalBytes];
+    int index = 0;
+    // First, place data blocks. Blocks of the second group are one byte longer than ones of the first group.
+    int numRsBlocksInGroup1 = numRSBlocks - numTotalBytes % numRSBlocks;
+    int numDataBytesInGroup1 = numDataBytes / numRSBlocks;
+    for (int i = 0; i <= numDataBytesInGroup1; i++) {
+      for (int j = i < numDataBytesInGroup1 ? 0 : numRsBlocksInGroup1; j < numRSBlocks; j++) {
+        order[index++] = (short) (j * numDataBytesInGroup1 + Math.max(0, j - numRsBlocksInGroup1) + i);
       }
     }
+    // Then, place error correction blocks.
+    int numEcBytesInBlock = (numTotalBytes - numDataBytes) / numRSBlocks;
+    for (int i = 0; i < numEcBytesInBlock; i++) {
+      for (int j = 0; j < numRSBlocks; j++) {
+        order[index++] = (short) (numDataBytes + j * numEcBytesInBlock + i);
+      }
+    }
+    return order;
   }
 
   static byte[] generateECBytes(byte[] dataBytes, int numEcBytesInBlock) {
-    int numDataBytes = dataBytes.length;
-    int[] toEncode = new int[numDataBytes + numEcBytesInBlock];
-    for (int i = 0; i < numDataBytes; i++) {
-      toEncode[i] = dataBytes[i] & 0xFF;
-    }
-    // Mike-CHANGED calling static encode method
-    encodeReedSolomon(QR_CODE_FIELD_256, toEncode, numEcBytesInBlock);
-
     byte[] ecBytes = new byte[numEcBytesInBlock];
-    for (int i = 0; i < numEcBytesInBlock; i++) {
-      ecBytes[i] = (byte) toEncode[numDataBytes + i];
-    }
+    // Mike-CHANGED using allocation-free encoder instead of int[] and polynomial round-trip
+    generateECBytes(dataBytes, 0, dataBytes.length, ecBytes, 0, numEcBytesInBlock);
     return ecBytes;
   }
 
+  /**
+   * Mike-ADDED: systematic Reed-Solomon encoder, a shift register which divides data by the generator polynomial.
+   * Writes {@code numEcBytes} parity bytes for {@code data[dataOffset until dataOffset+numDataBytes]}
+   * into {@code ec} starting at {@code ecOffset}. Allocates nothing.
+   */
+  static void generateECBytes(byte[] data, int dataOffset, int numDataBytes, byte[] ec, int ecOffset, int numEcBytes) {
+    if (numEcBytes == 0) {
+      throw new IllegalArgumentException("No error correction bytes");
+    }
+    if (numDataBytes <= 0) {
+      throw new IllegalArgumentException("No data bytes provided");
+    }
+    // coefficients[0] is always 1, others are never 0 for QR generators
+    int[] generator = generator(numEcBytes).coefficients;
+    int[] exp = QR_CODE_FIELD_256.expTable;
+    int[] log = QR_CODE_FIELD_256.logTable;
+    int last = ecOffset + numEcBytes - 1;
+    Arrays.fill(ec, ecOffset, last + 1, (byte) 0);
+    for (int i = dataOffset, end = dataOffset + numDataBytes; i < end; i++) {
+      int feedback = (data[i] ^ ec[ecOffset]) & 0xFF;
+      if (feedback == 0) {
+        System.arraycopy(ec, ecOffset + 1, ec, ecOffset, numEcBytes - 1);
+        ec[last] = 0;
+      } else {
+        int logFeedback = log[feedback];
+        for (int j = ecOffset, g = 1; j < last; j++, g++) {
+          ec[j] = (byte) (ec[j + 1] ^ exp[logFeedback + log[generator[g]]]);
+        }
+        ec[last] = (byte) exp[logFeedback + log[generator[numEcBytes]]];
+      }
+    }
+  }
+
   // Mike-REMOVED appendModeInfo
 
   /**
@@ -557,18 +1350,27 @@ public final class Encoder {
    * Append "bytes" in "mode" mode (encoding) into "bits". On success, store the result in "bits".
    */
   static void appendBytes( // Mike-CHANGED to accept and pass range to avoid .substring()
-      String content, int from, int to, Mode mode, BitArray bits, Charset encoding) throws WriterException {
+      CharSequence content, int from, int to, Mode mode, BitArray bits, Charset encoding) throws WriterException {
+    appendBytes(content, from, to, mode, bits, encoding, null);
+  }
+
+  /**
+   * Mike-ADDED: {@link #appendBytes(CharSequence, int, int, Mode, BitArray, Charset)} reusing the charset encoder
+   * of {@code context}, if any
+   */
+  static void appendBytes(CharSequence content, int from, int to, Mode mode, BitArray bits, Charset encoding,
+                          EncoderContext context) throws WriterException {
     switch (mode.ordinal()) { // Mike-CHANGED: int switch instead of enum one
-      case 0: appendKanjiBytes(content.substring(from, to), bits);break;
+      case 0: appendKanjiBytes(content, bits, from, to); break;
       case 1: appendAlphanumericBytes(content, bits, from, to); break;
       case 2: appendNumericBytes(content, bits, from, to); break;
-      case 3: append8BitBytes(content.substring(from, to), bits, encoding); break;
+      case 3: append8BitBytes(content, bits, from, to, encoding, context); break;
       default: throw new WriterException("Invalid mode: " + mode);
     }
   }
 
   // Mike-CHANGED to accept and pass range to avoid .substring()
-  static void appendNumericBytes(String content, BitArray bits, int i, int length) {
+  static void appendNumericBytes(CharSequence content, BitArray bits, int i, int length) {
     while (i < length) {
       int num1 = content.charAt(i) - '0';
       if (i + 2 < length) {
@@ -591,7 +1393,7 @@ public final class Encoder {
   }
 
   // Mike-CHANGED to accept and pass range to avoid .substring()
-  static void appendAlphanumericBytes(String content, BitArray bits, int i, int length) throws WriterException {
+  static void appendAlphanumericBytes(CharSequence content, BitArray bits, int i, int length) throws WriterException {
     while (i < length) {
       int code1 = getAlphanumericCode(content.charAt(i));
       if (code1 == -1) {
@@ -613,33 +1415,84 @@ public final class Encoder {
     }
   }
 
-  static void append8BitBytes(String content, BitArray bits, Charset encoding) {
-    byte[] bytes = content.getBytes(encoding);
-    for (byte b : bytes) {
-      bits.appendBits(b, 8);
+  /**
+   * Mike-ADDED: appends bytes from position to limit of {@code content}, four at a time.
+   */
+  static void appendBytes(ByteBuffer content, BitArray bits) {
+    int i = content.position();
+    int limit = content.limit();
+    if (content.hasArray()) {
+      bits.appendBytes(content.array(), content.arrayOffset() + i, limit - i);
+      return;
+    }
+    for (; i + 4 <= limit; i += 4) {
+      bits.appendBits(
+          content.get(i) << 24 | (content.get(i + 1) & 0xFF) << 16 | (content.get(i + 2) & 0xFF) << 8 |
+              (content.get(i + 3) & 0xFF), 32);
+    }
+    for (; i < limit; i++) {
+      bits.appendBits(content.get(i), 8);
     }
   }
 
-  static void appendKanjiBytes(String content, BitArray bits) throws WriterException {
-    byte[] bytes = content.getBytes(SHIFT_JIS_CHARSET);
-    if (bytes.length % 2 != 0) {
-      throw new WriterException("Kanji byte size not even");
-    }
-    int maxI = bytes.length - 1; // bytes.length must be even
-    for (int i = 0; i < maxI; i += 2) {
-      int byte1 = bytes[i] & 0xFF;
-      int byte2 = bytes[i + 1] & 0xFF;
-      int code = (byte1 << 8) | byte2;
-      int subtracted = -1;
-      if (code >= 0x8140 && code <= 0x9ffc) {
-        subtracted = code - 0x8140;
-      } else if (code >= 0xe040 && code <= 0xebbf) {
-        subtracted = code - 0xc140;
+  // Mike-CHANGED to accept range and write bytes as they are encoded, without String and byte[] copies
+  static void append8BitBytes(CharSequence content, BitArray bits, int from, int to, Charset encoding) {
+    append8BitBytes(content, bits, from, to, encoding, null);
+  }
+
+  /**
+   * Mike-ADDED
+   * @param context to take the charset encoder and its output buffer from, {@code null} to allocate them
+   */
+  static void append8BitBytes(CharSequence content, BitArray bits, int from, int to, Charset encoding,
+                              EncoderContext context) {
+    if (encoding.equals(StandardCharsets.ISO_8859_1)) {
+      for (int i = from; i < to; i++) {
+        char c = content.charAt(i);
+        if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(content.charAt(i + 1))) {
+          i++; // a pair is unmappable as a whole
+        }
+        bits.appendBits(c <= 0xFF ? c : '?', 8);
       }
-      if (subtracted == -1) {
+    } else if (encoding.equals(StandardCharsets.UTF_8)) {
+      for (int i = from; i < to; i++) {
+        char c = content.charAt(i);
+        if (c < 0x80) {
+          bits.appendBits(c, 8);
+        } else if (c < 0x800) {
+          bits.appendBits(0xC080 | (c << 2 & 0x1F00) | (c & 0x3F), 16);
+        } else if (!Character.isSurrogate(c)) {
+          bits.appendBits(0xE08080 | (c << 4 & 0x0F0000) | (c << 2 & 0x3F00) | (c & 0x3F), 24);
+        } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(content.charAt(i + 1))) {
+          int cp = Character.toCodePoint(c, content.charAt(++i));
+          bits.appendBits(0xF0808080 | (cp << 6 & 0x07000000) | (cp << 4 & 0x3F0000) | (cp << 2 & 0x3F00) | (cp & 0x3F),
+              32);
+        } else {
+          bits.appendBits('?', 8); // malformed
+        }
+      }
+    } else {
+      CharsetEncoder encoder = context != null ? context.encoder(encoding) : newEncoder(encoding);
+      CharBuffer in = CharBuffer.wrap(content, from, to);
+      ByteBuffer bytes = context != null ? context.chunk() : ByteBuffer.allocate(CHUNK);
+      ((Buffer) bytes).flip(); // empty, in read mode
+      boolean more;
+      do {
+        more = encode(encoder, in, bytes);
+        while (bytes.hasRemaining()) {
+          bits.appendBits(bytes.get(), 8);
+        }
+      } while (more);
+    }
+  }
+
+  // Mike-CHANGED to accept range and look up characters in the table, without String and byte[] copies
+  static void appendKanjiBytes(CharSequence content, BitArray bits, int from, int to) throws WriterException {
+    for (int i = from; i < to; i++) {
+      int encoded = kanjiCode(content.charAt(i));
+      if (encoded == -1) {
         throw new WriterException("Invalid byte sequence");
       }
-      int encoded = ((subtracted >> 8) * 0xc0) + (subtracted & 0xff);
       bits.appendBits(encoded, 13);
     }
   }
@@ -722,11 +1575,7 @@ public final class Encoder {
       throw new IllegalArgumentException("No data bytes provided");
     }
 
-    // Mike-INLINED and simplified buildGenerator
-    GenericGFPoly generator = new GenericGFPoly(field, new int[]{1});
-    for (int d = 1; d <= ecBytes; d++)
-      generator = generator
-          .multiply(new GenericGFPoly(field, new int[] { 1, field.expTable[d - 1 + field.generatorBase]}));
+    GenericGFPoly generator = field == QR_CODE_FIELD_256 ? generator(ecBytes) : buildGenerator(field, ecBytes);
 
     int[] infoCoefficients = new int[dataBytes];
     System.arraycopy(toEncode, 0, infoCoefficients, 0, dataBytes);
@@ -737,6 +1586,30 @@ public final class Encoder {
     Arrays.fill(toEncode, dataBytes, dataBytes + numZeroCoefficients, 0); // Mike-CHANGED Arrays.fill instead of a loop
     System.arraycopy(coefficients, 0, toEncode, dataBytes + numZeroCoefficients, coefficients.length);
   }
+
+  // Mike-ADDED: QR uses only 13 distinct EC codeword counts (7..30), so generators are built once per count
+  // and shared. GenericGFPoly is immutable, thus a racy lazy initialization is safe: the worst case is
+  // a duplicate computation of the same polynomial.
+  private static final GenericGFPoly[] GENERATORS = new GenericGFPoly[31];
+  static GenericGFPoly generator(int ecBytes) {
+    if (ecBytes >= GENERATORS.length) {
+      return buildGenerator(QR_CODE_FIELD_256, ecBytes);
+    }
+    GenericGFPoly generator = GENERATORS[ecBytes];
+    if (generator == null) {
+      GENERATORS[ecBytes] = generator = buildGenerator(QR_CODE_FIELD_256, ecBytes);
+    }
+    return generator;
+  }
+
+  // Mike-INLINED and simplified buildGenerator
+  private static GenericGFPoly buildGenerator(GenericGF field, int ecBytes) {
+    GenericGFPoly generator = new GenericGFPoly(field, new int[]{1});
+    for (int d = 1; d <= ecBytes; d++)
+      generator = generator
+          .multiply(new GenericGFPoly(field, new int[] { 1, field.expTable[d - 1 + field.generatorBase]}));
+    return generator;
+  }
   // END Mike-MOVED
 
   // Mike-MOVED from Version
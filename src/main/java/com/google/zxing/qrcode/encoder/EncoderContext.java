@@ -0,0 +1,139 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.common.BitArray;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+/**
+ * Mike-ADDED: a workspace which keeps buffers between {@link Encoder} calls.
+ * Buffers grow on demand up to the sizes needed by the largest symbol seen, so a thread which encodes
+ * symbols one after another produces almost no garbage apart from resulting {@link QRCode}s.
+ * Matrix and bitboard buffers are kept for the last symbol dimension, which suits runs of similar symbols.
+ *
+ * <p>Not thread-safe: use an instance per thread, e.g. via {@link ThreadLocal}.</p>
+ */
+public final class EncoderContext {
+
+  final BitArray headerBits = new BitArray();
+  final BitArray dataBits = new BitArray();
+  final BitArray headerAndDataBits = new BitArray();
+  final int[] version = new int[1];
+
+  private CharsetEncoder encoder; // of the last charset other than ISO-8859-1 and UTF-8
+  private ByteBuffer chunk;
+  private int[] segments = new int[0];
+  private byte[] blocks = new byte[0];
+  private byte[] codewords = new byte[0];
+
+  private int dimension;
+  private ByteMatrix unmasked;
+  private long[] unmaskedRows;
+  private long[] unmaskedColumns;
+  private long[] rows;
+  private long[] columns;
+
+  public EncoderContext() {
+  }
+
+  /**
+   * @return a reset encoder which replaces unmappable characters, kept while the charset is the same
+   */
+  CharsetEncoder encoder(Charset charset) {
+    if (encoder == null || !encoder.charset().equals(charset)) {
+      encoder = Encoder.newEncoder(charset);
+    } else {
+      encoder.reset();
+    }
+    return encoder;
+  }
+
+  /**
+   * @return a cleared buffer for bytes being encoded
+   */
+  ByteBuffer chunk() {
+    if (chunk == null) {
+      chunk = ByteBuffer.allocate(Encoder.CHUNK);
+    }
+    ((Buffer) chunk).clear();
+    return chunk;
+  }
+
+  int[] segments(int size) {
+    if (segments.length < size) {
+      segments = new int[size];
+    }
+    return segments;
+  }
+
+  byte[] blocks(int size) {
+    if (blocks.length < size) {
+      blocks = new byte[size];
+    }
+    return blocks;
+  }
+
+  byte[] codewords(int size) {
+    if (codewords.length < size) {
+      codewords = new byte[size];
+    }
+    return codewords;
+  }
+
+  /**
+   * Switch matrix buffers to the given dimension, dropping the ones of another size.
+   */
+  void setDimension(int dimension) {
+    if (this.dimension != dimension) {
+      this.dimension = dimension;
+      unmasked = null;
+      unmaskedRows = null;
+      unmaskedColumns = null;
+      rows = null;
+      columns = null;
+    }
+  }
+
+  ByteMatrix unmasked() {
+    return unmasked == null ? unmasked = new ByteMatrix(dimension, dimension) : unmasked;
+  }
+
+  long[] unmaskedRows() {
+    return unmaskedRows == null ? unmaskedRows = newBitboard() : unmaskedRows;
+  }
+
+  long[] unmaskedColumns() {
+    return unmaskedColumns == null ? unmaskedColumns = newBitboard() : unmaskedColumns;
+  }
+
+  long[] rows() {
+    return rows == null ? rows = newBitboard() : rows;
+  }
+
+  long[] columns() {
+    return columns == null ? columns = newBitboard() : columns;
+  }
+
+  private long[] newBitboard() {
+    return new long[dimension * MaskUtil.lineWords(dimension)];
+  }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+/**
+ * Mike-ADDED: splits content into segments with the mode selection and switching heuristics
+ * of ISO/IEC 18004 Annex J, "Optimisation of bit stream length".
+ *
+ * <p>Unlike {@link MinimalEncoder}, no graph is built: every character is looked at a bounded number of times,
+ * and segments are written to an int array as {@code start << 2 | compacted mode ordinal}
+ * (see {@link MinimalEncoder#MODES}), each one lasting till the start of the next one.
+ * Run length thresholds depend on the version class, 1-9, 10-26, or 27-40, packed by a byte per class.</p>
+ *
+ * <p>When a character can't be encoded in the current NUMERIC, ALPHANUMERIC, or KANJI mode, the next mode
+ * is selected as if the data began there, i.e. with the initial selection rules of J.2.1. This is a deliberate
+ * deviation from the switching rules of J.2.3 and J.2.4, which switch straight to the mode of that character:
+ * the initial rules also look at what follows, so a short ALPHANUMERIC run before BYTE data, for example,
+ * goes to BYTE mode at once instead of making a segment of its own.</p>
+ */
+final class GreedyEncoder {
+
+  private static final int KANJI = 0;
+  private static final int ALPHANUMERIC = 1;
+  private static final int NUMERIC = 2;
+  private static final int BYTE = 3;
+
+  // initial mode selection
+  private static final int NUMERIC_THEN_BYTE = 4 | 4 << 8 | 5 << 16;
+  private static final int NUMERIC_THEN_ALPHANUMERIC = 7 | 8 << 8 | 9 << 16;
+  private static final int ALPHANUMERIC_THEN_BYTE = 6 | 7 << 8 | 8 << 16;
+
+  // switching from BYTE mode
+  private static final int BYTE_TO_KANJI = 9 | 12 << 8 | 13 << 16;
+  private static final int BYTE_TO_NUMERIC_THEN_BYTE = 6 | 8 << 8 | 9 << 16;
+  private static final int BYTE_TO_NUMERIC_THEN_ALPHANUMERIC = 6 | 7 << 8 | 8 << 16;
+  private static final int BYTE_TO_ALPHANUMERIC = 11 | 15 << 8 | 16 << 16;
+
+  // switching from ALPHANUMERIC mode
+  private static final int ALPHANUMERIC_TO_NUMERIC = 13 | 15 << 8 | 17 << 16;
+
+  private GreedyEncoder() {
+  }
+
+  /**
+   * @param kanji whether KANJI mode may be used, i.e. BYTE mode encoding is Shift_JIS
+   * @param versionClass 0 for versions 1-9, 1 for 10-26, 2 for 27-40
+   * @param segments output, at least {@code max(content.length(), 1)} long
+   * @return number of segments written, there's a single BYTE one for empty content
+   */
+  static int segment(CharSequence content, boolean kanji, int versionClass, int[] segments) {
+    int length = content.length();
+    int shift = versionClass << 3;
+    int count = 0;
+    int mode = -1;
+    int i = 0;
+    while (i < length) {
+      int next;
+      int type = typeOf(content, i, length, kanji);
+      if (mode == BYTE) {
+        next = BYTE;
+        if (type == KANJI) {
+          int toKanji = threshold(BYTE_TO_KANJI, shift);
+          if (run(content, i, length, kanji, KANJI, toKanji) >= toKanji) {
+            next = KANJI;
+          }
+        } else if (type != BYTE) {
+          if (type == NUMERIC) {
+            int digits = run(content, i, length, kanji, NUMERIC, 9);
+            int toNumeric = threshold(typeOf(content, i + digits, length, kanji) == ALPHANUMERIC
+                ? BYTE_TO_NUMERIC_THEN_ALPHANUMERIC : BYTE_TO_NUMERIC_THEN_BYTE, shift);
+            if (digits >= toNumeric) {
+              next = NUMERIC;
+            }
+          }
+          int toAlphanumeric = threshold(BYTE_TO_ALPHANUMERIC, shift);
+          if (next == BYTE && alphanumericRun(content, i, length, kanji, toAlphanumeric,
+              threshold(BYTE_TO_NUMERIC_THEN_BYTE, shift)) >= toAlphanumeric) {
+            next = ALPHANUMERIC;
+          }
+        }
+      } else if (mode == ALPHANUMERIC && (type == NUMERIC || type == ALPHANUMERIC)) {
+        next = ALPHANUMERIC;
+        int toNumeric = threshold(ALPHANUMERIC_TO_NUMERIC, shift);
+        if (type == NUMERIC && run(content, i, length, kanji, NUMERIC, toNumeric) >= toNumeric) {
+          next = NUMERIC;
+        }
+      } else if (mode != -1 && type == mode) { // NUMERIC or KANJI goes on
+        next = mode;
+      } else {
+        next = initialMode(content, i, length, kanji, type, shift);
+      }
+      if (next != mode) {
+        segments[count++] = i << 2 | next;
+        mode = next;
+      }
+      i++;
+    }
+    if (count == 0) {
+      segments[count++] = BYTE;
+    }
+    return count;
+  }
+
+  /**
+   * J.2.1, also used when the current mode can't encode the character at {@code i}.
+   */
+  private static int initialMode(CharSequence content, int i, int length, boolean kanji, int type, int shift) {
+    switch (type) {
+      case NUMERIC: {
+        int digits = run(content, i, length, kanji, NUMERIC, 9);
+        int after = typeOf(content, i + digits, length, kanji);
+        if (after == BYTE && digits < threshold(NUMERIC_THEN_BYTE, shift)) {
+          return BYTE;
+        } else if (after == ALPHANUMERIC && digits < threshold(NUMERIC_THEN_ALPHANUMERIC, shift)) {
+          return ALPHANUMERIC;
+        }
+        return NUMERIC;
+      }
+      case ALPHANUMERIC: {
+        int chars = run(content, i, length, kanji, ALPHANUMERIC, 8);
+        return typeOf(content, i + chars, length, kanji) == BYTE && chars < threshold(ALPHANUMERIC_THEN_BYTE, shift)
+            ? BYTE : ALPHANUMERIC;
+      }
+      default:
+        return type; // KANJI or BYTE
+    }
+  }
+
+  /**
+   * @return the most compact mode of the character at {@code i}, -1 past the end
+   */
+  private static int typeOf(CharSequence content, int i, int length, boolean kanji) {
+    if (i >= length) {
+      return -1;
+    }
+    char c = content.charAt(i);
+    if (c >= '0' && c <= '9') {
+      return NUMERIC;
+    } else if (Encoder.getAlphanumericCode(c) != -1) {
+      return ALPHANUMERIC;
+    } else if (kanji && Encoder.kanjiCode(c) != -1) {
+      return KANJI;
+    }
+    return BYTE;
+  }
+
+  /**
+   * @return number of characters, up to {@code limit}, starting at {@code i} which can be encoded in {@code mode}
+   */
+  private static int run(CharSequence content, int i, int length, boolean kanji, int mode, int limit) {
+    int end = Math.min(length, i + limit);
+    int j = i;
+    while (j < end) {
+      int type = typeOf(content, j, length, kanji);
+      if (type != mode && !(mode == ALPHANUMERIC && type == NUMERIC)) {
+        break;
+      }
+      j++;
+    }
+    return j - i;
+  }
+
+  /**
+   * @return number of characters, up to {@code limit}, starting at {@code i} which can be encoded
+   *   in ALPHANUMERIC mode, not counting a run of {@code digitLimit} digits, which is better off in NUMERIC mode
+   */
+  private static int alphanumericRun(CharSequence content, int i, int length, boolean kanji, int limit, int digitLimit) {
+    int end = Math.min(length, i + limit);
+    int j = i;
+    int digits = 0;
+    while (j < end) {
+      int type = typeOf(content, j, length, kanji);
+      if (type == NUMERIC) {
+        if (++digits == digitLimit) {
+          return j + 1 - digits - i;
+        }
+      } else if (type == ALPHANUMERIC) {
+        digits = 0;
+      } else {
+        break;
+      }
+      j++;
+    }
+    return j - i;
+  }
+
+  private static int threshold(int thresholds, int shift) {
+    return thresholds >>> shift & 0xFF;
+  }
+
+}
@@ -16,6 +16,8 @@
 
 package com.google.zxing.qrcode.encoder;
 
+import java.util.Arrays;
+
 /**
  * @author Satoru Takabayashi
  * @author Daniel Switkin
@@ -31,24 +33,15 @@ final class MaskUtil {
 
   // Mike-REMOVED applyMaskPenaltyRule1
 
+  // Mike-CHANGED: rules are evaluated on bitboards by the functions below, ByteMatrix ones are kept as adapters
+
   /**
    * Apply mask penalty rule 2 and return the penalty. Find 2x2 blocks with the same color and give
    * penalty to them. This is actually equivalent to the spec's rule, which is to find MxN blocks and give a
    * penalty proportional to (M-1)x(N-1), because this is the number of 2x2 blocks inside such a block.
    */
   static int applyMaskPenaltyRule2(ByteMatrix matrix) {
-    int penalty = 0;
-    int width = matrix.width; // Mike-CHANGED: direct w/h field access; matrix.get() accessor
-    int height = matrix.height;
-    for (int y = 0; y < height - 1; y++) {
-      for (int x = 0; x < width - 1; x++) {
-        int value = matrix.get(x, y);
-        if (value == matrix.get(x + 1, y) && value == matrix.get(x, y + 1) && value == matrix.get(x + 1, y + 1)) {
-          penalty++;
-        }
-      }
-    }
-    return 3 * penalty; // Mike-CHANGED inlined constant
+    return penaltyRule2(rows(matrix), matrix.width, matrix.height);
   }
 
   /**
@@ -57,84 +50,176 @@ final class MaskUtil {
    * find patterns like 000010111010000, we give penalty once.
    */
   static int applyMaskPenaltyRule3(ByteMatrix matrix) {
-    int numPenalties = 0;
-    int width = matrix.width; // Mike-CHANGED: direct w/h field access; matrix.get() accessor
-    int height = matrix.height;
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        if (x + 6 < width &&
-            matrix.get(x, y) == 1 &&
-            matrix.get(x + 1, y) == 0 &&
-            matrix.get(x + 2, y) == 1 &&
-            matrix.get(x + 3, y) == 1 &&
-            matrix.get(x + 4, y) == 1 &&
-            matrix.get(x + 5, y) == 0 &&
-            matrix.get(x + 6, y) == 1 &&
-            (isWhiteHorizontal(matrix, y, x - 4, x) || isWhiteHorizontal(matrix, y, x + 7, x + 11))) {
-          numPenalties++;
-        }
-        if (y + 6 < height &&
-            matrix.get(x, y) == 1 &&
-            matrix.get(x, y + 1) == 0 &&
-            matrix.get(x, y + 2) == 1 &&
-            matrix.get(x, y + 3) == 1 &&
-            matrix.get(x, y + 4) == 1 &&
-            matrix.get(x, y + 5) == 0 &&
-            matrix.get(x, y + 6) == 1 &&
-            (isWhiteVertical(matrix, x, y - 4, y) || isWhiteVertical(matrix, x, y + 7, y + 11))) {
-          numPenalties++;
+    return penaltyRule3(rows(matrix), matrix.width, matrix.height) +
+        penaltyRule3(columns(matrix), matrix.height, matrix.width);
+  }
+
+  /**
+   * Apply mask penalty rule 4 and return the penalty. Calculate the ratio of dark cells and give
+   * penalty if the ratio is far from 50%. It gives 10 penalty for 5% distance.
+   */
+  static int applyMaskPenaltyRule4(ByteMatrix matrix) {
+    return penaltyRule4(rows(matrix), matrix.width, matrix.height);
+  }
+
+  // Mike-ADDED: bitboards. Every line (a row, or a column of a transposed matrix) takes lineWords(length) longs,
+  // 1 bit per module, 1 is dark. The least significant bit represents the first module, bits past the end are 0.
+
+  static int lineWords(int length) {
+    return (length + 63) >>> 6;
+  }
+
+  static long[] rows(ByteMatrix matrix) {
+    long[] rows = new long[matrix.height * lineWords(matrix.width)];
+    toBitboards(matrix, rows, null);
+    return rows;
+  }
+
+  static long[] columns(ByteMatrix matrix) {
+    long[] columns = new long[matrix.width * lineWords(matrix.height)];
+    toBitboards(matrix, new long[matrix.height * lineWords(matrix.width)], columns);
+    return columns;
+  }
+
+  /**
+   * Fill {@code rows} and (optional) {@code columns}, the transposed version, with dark modules of the matrix.
+   */
+  static void toBitboards(ByteMatrix matrix, long[] rows, long[] columns) {
+    int rowWords = lineWords(matrix.width);
+    int columnWords = lineWords(matrix.height);
+    if (columns != null) {
+      Arrays.fill(columns, 0, matrix.width * columnWords, 0L);
+    }
+    for (int y = 0; y < matrix.height; y++) {
+      matrix.getRowBits(y, rows, y * rowWords);
+      if (columns != null) {
+        long bit = 1L << (y & 63);
+        for (int j = 0; j < rowWords; j++) {
+          for (long word = rows[y * rowWords + j]; word != 0; word &= word - 1) {
+            int x = (j << 6) + Long.numberOfTrailingZeros(word);
+            columns[x * columnWords + (y >>> 6)] |= bit;
+          }
         }
       }
     }
-    return numPenalties * 40; // Mike-CHANGED inlined constant
   }
 
-  // Mike-CHANGED: accepting full matrix and using accessors
-  private static boolean isWhiteHorizontal(ByteMatrix matrix, int y, int from, int to) {
-    if (from < 0 || matrix.width < to) {
-      return false;
-    }
-    for (int x = from; x < to; x++) {
-      if (matrix.get(x, y) == 1) {
-        return false;
+  /**
+   * Sum of all four rules. {@code columns} must be {@code rows} transposed.
+   */
+  static int calculateMaskPenalty(long[] rows, long[] columns, int width, int height) {
+    return penaltyRule1(rows, width, height) +
+        penaltyRule1(columns, height, width) +
+        penaltyRule2(rows, width, height) +
+        penaltyRule3(rows, width, height) +
+        penaltyRule3(columns, height, width) +
+        penaltyRule4(rows, width, height);
+  }
+
+  /**
+   * Rule 1 for {@code count} lines of {@code length} modules: a run of N >= 5 modules of the same color gives
+   * 3 + (N - 5) = (N - 4) + 2 penalty, where N - 4 is the number of 5-module windows inside the run,
+   * and 2 is given for the window which starts the run.
+   */
+  static int penaltyRule1(long[] lines, int length, int count) {
+    int words = lineWords(length);
+    int penalty = 0;
+    for (int offset = 0, end = count * words; offset < end; offset += words) {
+      long previous = 0;
+      for (int j = 0; j < words; j++) {
+        long word = lines[offset + j];
+        long next = j + 1 < words ? lines[offset + j + 1] : 0;
+        long s1 = ahead(word, next, 1), s2 = ahead(word, next, 2), s3 = ahead(word, next, 3), s4 = ahead(word, next, 4);
+        long windows = ((word & s1 & s2 & s3 & s4) | ~(word | s1 | s2 | s3 | s4)) & upTo(length - 5, j);
+        long runStarts = word ^ behind(word, previous, 1);
+        if (j == 0) {
+          runStarts |= 1;
+        }
+        penalty += Long.bitCount(windows) + 2 * Long.bitCount(windows & runStarts);
+        previous = word;
       }
     }
-    return true;
+    return penalty;
   }
 
-  // Mike-CHANGED: using matrix accessors
-  private static boolean isWhiteVertical(ByteMatrix matrix, int x, int from, int to) {
-    if (from < 0 || matrix.height < to) {
-      return false;
-    }
-    for (int y = from; y < to; y++) {
-      if (matrix.get(x, y) == 1) {
-        return false;
+  /**
+   * Rule 2: every 2x2 block of the same color gives 3 penalty.
+   */
+  static int penaltyRule2(long[] rows, int width, int height) {
+    int words = lineWords(width);
+    int penalty = 0;
+    for (int offset = 0, end = (height - 1) * words; offset < end; offset += words) {
+      for (int j = 0; j < words; j++) {
+        long top = rows[offset + j];
+        long bottom = rows[offset + words + j];
+        boolean last = j + 1 == words;
+        long topRight = ahead(top, last ? 0 : rows[offset + j + 1], 1);
+        long bottomRight = ahead(bottom, last ? 0 : rows[offset + words + j + 1], 1);
+        penalty += Long.bitCount(~(top ^ topRight) & ~(top ^ bottom) & ~(bottom ^ bottomRight) & upTo(width - 2, j));
       }
     }
-    return true;
+    return 3 * penalty; // Mike-CHANGED inlined constant
   }
 
   /**
-   * Apply mask penalty rule 4 and return the penalty. Calculate the ratio of dark cells and give
-   * penalty if the ratio is far from 50%. It gives 10 penalty for 5% distance.
+   * Rule 3: every 1011101 pattern with four light modules before or after it gives 40 penalty.
    */
-  static int applyMaskPenaltyRule4(ByteMatrix matrix) {
-    int numDarkCells = 0;
-    int width = matrix.width;// Mike-CHANGED: direct w/h access and use of get() accessor
-    int height = matrix.height;
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        if (matrix.get(x, y) == 1) {
-          numDarkCells++;
+  static int penaltyRule3(long[] lines, int length, int count) {
+    int words = lineWords(length);
+    int numPenalties = 0;
+    for (int offset = 0, end = count * words; offset < end; offset += words) {
+      long previous = 0;
+      for (int j = 0; j < words; j++) {
+        long word = lines[offset + j];
+        long next = j + 1 < words ? lines[offset + j + 1] : 0;
+        long patterns = word & ~ahead(word, next, 1) & ahead(word, next, 2) & ahead(word, next, 3) &
+            ahead(word, next, 4) & ~ahead(word, next, 5) & ahead(word, next, 6) & upTo(length - 7, j);
+        if (patterns != 0) {
+          long whiteBefore = ~(behind(word, previous, 1) | behind(word, previous, 2) |
+              behind(word, previous, 3) | behind(word, previous, 4));
+          if (j == 0) {
+            whiteBefore &= ~0xFL; // four modules before the pattern must exist
+          }
+          long whiteAfter = ~(ahead(word, next, 7) | ahead(word, next, 8) |
+              ahead(word, next, 9) | ahead(word, next, 10)) & upTo(length - 11, j);
+          numPenalties += Long.bitCount(patterns & (whiteBefore | whiteAfter));
         }
+        previous = word;
       }
     }
-    int numTotalCells = matrix.height * matrix.width;
+    return numPenalties * 40; // Mike-CHANGED inlined constant
+  }
+
+  /**
+   * Rule 4: 10 penalty for every 5% of dark modules ratio distance from 50%.
+   */
+  static int penaltyRule4(long[] rows, int width, int height) {
+    int numDarkCells = 0;
+    for (int i = 0, end = height * lineWords(width); i < end; i++) {
+      numDarkCells += Long.bitCount(rows[i]);
+    }
+    int numTotalCells = height * width;
     int fivePercentVariances = Math.abs(numDarkCells * 2 - numTotalCells) * 10 / numTotalCells;
     return fivePercentVariances * 10; // Mike-CHANGED inlined constant
   }
 
+  // bit i is module i + k, 0 < k < 64
+  private static long ahead(long word, long next, int k) {
+    return (word >>> k) | (next << (64 - k));
+  }
+
+  // bit i is module i - k, 0 < k < 64
+  private static long behind(long word, long previous, int k) {
+    return (word << k) | (previous >>> (64 - k));
+  }
+
+  // bits of word j representing modules [0, limit]
+  private static long upTo(int limit, int j) {
+    int bits = limit - (j << 6);
+    return bits < 0 ? 0 : bits >= 63 ? -1L : -1L >>> (63 - bits);
+  }
+  // END Mike-ADDED
+
   /**
    * Return the mask bit for "getMaskPattern" at "x" and "y". See 8.8 of JISX0510:2004 for mask
    * pattern conditions.
@@ -181,29 +266,9 @@ final class MaskUtil {
    * vertical and horizontal orders respectively.
    */
   static int applyMaskPenaltyRule1Internal(ByteMatrix matrix, boolean isHorizontal) {
-    int penalty = 0; // Mike-CHANGED: direct w/h access and use of get() accessor
-    int iLimit = isHorizontal ? matrix.height : matrix.width;
-    int jLimit = isHorizontal ? matrix.width : matrix.height;
-    for (int i = 0; i < iLimit; i++) {
-      int numSameBitCells = 0;
-      int prevBit = -1;
-      for (int j = 0; j < jLimit; j++) {
-        int bit = isHorizontal ? matrix.get(j, i) : matrix.get(i, j);
-        if (bit == prevBit) {
-          numSameBitCells++;
-        } else {
-          if (numSameBitCells >= 5) {
-            penalty += 3 + (numSameBitCells - 5); // Mike-CHANGED inlined constant
-          }
-          numSameBitCells = 1;  // Include the cell itself.
-          prevBit = bit;
-        }
-      }
-      if (numSameBitCells >= 5) {
-        penalty += 3 + (numSameBitCells - 5); // Mike-CHANGED inlined constant
-      }
-    }
-    return penalty;
+    return isHorizontal // Mike-CHANGED: evaluating on bitboards
+        ? penaltyRule1(rows(matrix), matrix.width, matrix.height)
+        : penaltyRule1(columns(matrix), matrix.height, matrix.width);
   }
 
 }
@@ -82,7 +82,74 @@ final class MatrixUtil {
     // Version info appear if version >= 7.
     maybeEmbedVersionInfo(version, matrix);
     // Data should be embedded at end.
-    embedDataBits(dataBits, maskPattern, matrix);
+    embedDataBits(dataBits, maskPattern, VersionTemplate.forVersion(version), matrix); // Mike-CHANGED: by table
+  }
+
+  // Mike-ADDED: build everything which does not depend on mask pattern once per symbol, starting from a template,
+  // with bits of each interleaved codeword placed from the most significant one.
+  // Type info cells are left 0 and must be written by applyMask().
+  static void buildUnmaskedMatrix(byte[] codewords,
+                                  int numCodewords,
+                                  int version,
+                                  ByteMatrix matrix) throws WriterException {
+    VersionTemplate template = VersionTemplate.forVersion(version);
+    matrix.copyFrom(template.functionPatterns);
+    int[] dataModules = template.dataModules;
+    int size = numCodewords * 8;
+    if (size > dataModules.length) {
+      throw new WriterException("Not all bits consumed: " + dataModules.length + '/' + size);
+    }
+    // Only dark modules are visited, the rest and the remainder bits are already 0
+    for (int i = 0; i < numCodewords; i++) {
+      int codeword = codewords[i] & 0xFF;
+      while (codeword != 0) {
+        int bit = Integer.numberOfLeadingZeros(codeword) - 24;
+        int position = dataModules[i * 8 + bit];
+        matrix.set(position & 0xFF, position >>> 8, 1);
+        codeword ^= 0x80 >>> bit;
+      }
+    }
+  }
+
+  // Mike-ADDED: turn unmasked matrix into a final one, equivalent to buildMatrix() with the same arguments
+  // Mike-CHANGED: the mask is a rows bitboard of VersionTemplate.maskBoards()
+  static void applyMask(ByteMatrix unmasked,
+                        long[] maskRows,
+                        ErrorCorrectionLevel ecLevel,
+                        int maskPattern,
+                        ByteMatrix matrix) throws WriterException {
+    matrix.copyFrom(unmasked);
+    matrix.xorRowBits(maskRows);
+    embedTypeInfo(ecLevel, maskPattern, matrix);
+  }
+
+  // Mike-ADDED: the same on bitboards of the unmasked matrix, giving bitboards of the final one
+  static void applyMask(long[] unmaskedRows,
+                        long[] unmaskedColumns,
+                        long[][] maskBoards,
+                        ErrorCorrectionLevel ecLevel,
+                        int maskPattern,
+                        int dimension,
+                        long[] rows,
+                        long[] columns) throws WriterException {
+    long[] maskRows = maskBoards[maskPattern];
+    long[] maskColumns = maskBoards[QRCode.NUM_MASK_PATTERNS + maskPattern];
+    int words = MaskUtil.lineWords(dimension);
+    for (int i = 0, length = dimension * words; i < length; i++) {
+      rows[i] = unmaskedRows[i] ^ maskRows[i];
+      columns[i] = unmaskedColumns[i] ^ maskColumns[i];
+    }
+    // Type info cells are 0 in the unmasked matrix and are never masked, so setting dark ones is enough
+    for (int typeInfo = typeInfo(ecLevel, maskPattern); typeInfo != 0; typeInfo &= typeInfo - 1) {
+      int i = Integer.numberOfTrailingZeros(typeInfo);
+      setBit(typeInfoX1(i), typeInfoY1(i), rows, columns, words);
+      setBit(i < 8 ? dimension - i - 1 : 8, i < 8 ? 8 : dimension - 7 + (i - 8), rows, columns, words);
+    }
+  }
+
+  private static void setBit(int x, int y, long[] rows, long[] columns, int words) {
+    rows[y * words + (x >>> 6)] |= 1L << x;
+    columns[x * words + (y >>> 6)] |= 1L << y;
   }
 
   // Embed basic patterns. On success, modify the matrix and return true.
@@ -109,34 +176,39 @@ final class MatrixUtil {
   // Embed type information. On success, modify the matrix.
   static void embedTypeInfo(ErrorCorrectionLevel ecLevel, int maskPattern, ByteMatrix matrix)
       throws WriterException {
-    BitArray typeInfoBits = new BitArray();
-    makeTypeInfoBits(ecLevel, maskPattern, typeInfoBits);
+    int typeInfo = typeInfo(ecLevel, maskPattern); // Mike-CHANGED: no BitArray
 
-    long typeInfoCoordinateX = TYPE_INFO_COORDINATES;
-    long typeInfoCoordinateY = TYPE_INFO_COORDINATES;
     for (int i = 0; i < 15; ++i) {
-      // Place bits in LSB to MSB order.  LSB (least significant bit) is the last value in
-      // "typeInfoBits".
-      boolean bit = typeInfoBits.get(typeInfoBits.getSize() - 1 - i);
-
-      // Type info bits at the left top corner. See 8.9 of JISX0510:2004 (p.46).
-      matrix.set((int) ((typeInfoCoordinateX >>> 56) & 0xF), (int) (typeInfoCoordinateY & 0xF), bit);
-      typeInfoCoordinateX <<= 4;
-      typeInfoCoordinateY >>>= 4;
-
-      int x2;
-      int y2;
-      if (i < 8) {
-        // Right top corner.
-        x2 = matrix.width - i - 1;
-        y2 = 8;
-      } else {
-        // Left bottom corner.
-        x2 = 8;
-        y2 = matrix.height - 7 + (i - 8);
-      }
-      matrix.set(x2, y2, bit);
+      // Place bits in LSB to MSB order.
+      setTypeInfoBit(i, (typeInfo & (1 << i)) != 0, matrix);
+    }
+  }
+
+  private static int typeInfoX1(int i) {
+    return (int) ((TYPE_INFO_COORDINATES >>> (56 - 4 * i)) & 0xF);
+  }
+
+  private static int typeInfoY1(int i) {
+    return (int) ((TYPE_INFO_COORDINATES >>> (4 * i)) & 0xF);
+  }
+
+  // Mike-ADDED: outlined from embedTypeInfo
+  static void setTypeInfoBit(int i, boolean bit, ByteMatrix matrix) {
+    // Type info bits at the left top corner. See 8.9 of JISX0510:2004 (p.46).
+    matrix.set(typeInfoX1(i), typeInfoY1(i), bit);
+
+    int x2;
+    int y2;
+    if (i < 8) {
+      // Right top corner.
+      x2 = matrix.width - i - 1;
+      y2 = 8;
+    } else {
+      // Left bottom corner.
+      x2 = 8;
+      y2 = matrix.height - 7 + (i - 8);
     }
+    matrix.set(x2, y2, bit);
   }
 
   // Embed version information if need be. On success, modify the matrix and return true.
@@ -212,6 +284,34 @@ final class MatrixUtil {
     }
   }
 
+  // Mike-ADDED: the same for a matrix which has exactly the data modules of the template empty,
+  // i.e. with all function patterns, type and version info already embedded.
+  // Goes over placement and mask tables instead of walking the matrix, no per-module emptiness and mask checks.
+  private static void embedDataBits(BitArray dataBits, int maskPattern, VersionTemplate template, ByteMatrix matrix)
+      throws WriterException {
+    int[] dataModules = template.dataModules;
+    byte[] dataMasks = template.dataMasks;
+    int size = dataBits.getSize();
+    if (size > dataModules.length) {
+      throw new WriterException("Not all bits consumed: " + dataModules.length + '/' + size);
+    }
+    int maskShift = maskPattern == -1 ? 8 : maskPattern; // no mask bits beyond 8th
+    int[] words = dataBits.getBitArray();
+    int i = 0;
+    for (int w = 0; i < size; w++) {
+      int word = words[w];
+      for (int end = Math.min(size, i + 32); i < end; i++, word >>>= 1) {
+        int position = dataModules[i];
+        matrix.set(position & 0xFF, position >>> 8, (word ^ ((dataMasks[i] & 0xFF) >>> maskShift)) & 1);
+      }
+    }
+    // Padding bits, 8.4.9 of JISX0510:2004 (p. 24), are 0 before masking
+    for (; i < dataModules.length; i++) {
+      int position = dataModules[i];
+      matrix.set(position & 0xFF, position >>> 8, ((dataMasks[i] & 0xFF) >>> maskShift) & 1);
+    }
+  }
+
   // Mike-REMOVED findMSBSet
 
   // Calculate BCH (Bose-Chaudhuri-Hocquenghem) code for "value" using polynomial "poly". The BCH
@@ -260,22 +360,18 @@ final class MatrixUtil {
   // JISX0510:2004 (p.45) for details.
   static void makeTypeInfoBits(ErrorCorrectionLevel ecLevel, int maskPattern, BitArray bits)
       throws WriterException {
+    bits.appendBits(typeInfo(ecLevel, maskPattern), 15); // Mike-CHANGED: delegated to typeInfo()
+  }
+
+  // Mike-ADDED: type info as a 15-bit value, the most significant bit goes first
+  static int typeInfo(ErrorCorrectionLevel ecLevel, int maskPattern)
+      throws WriterException {
     if (!QRCode.isValidMaskPattern(maskPattern)) {
       throw new WriterException("Invalid mask pattern");
     }
     int typeInfo = (ecLevel.ordinal() << 3) | maskPattern;
-    bits.appendBits(typeInfo, 5);
-
     int bchCode = calculateBCHCode(typeInfo, TYPE_INFO_POLY);
-    bits.appendBits(bchCode, 10);
-
-    BitArray maskBits = new BitArray();
-    maskBits.appendBits(TYPE_INFO_MASK_PATTERN, 15);
-    bits.xor(maskBits);
-
-    if (bits.getSize() != 15) {  // Just in case.
-      throw new WriterException("should not happen but we got: " + bits.getSize());
-    }
+    return ((typeInfo << 10) | bchCode) ^ TYPE_INFO_MASK_PATTERN;
   }
 
   // Make bit vector of version information. On success, store the result in "bits" and return true.
@@ -22,10 +22,9 @@ import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import com.google.zxing.qrcode.decoder.Mode;
 
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
-import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -60,29 +59,36 @@ final class MinimalEncoder {
   // Mike-CHANGED: compacted VersionSize
   private static final int VERSIONS = 40 << 24 | 26 << 16 | 9 << 8 /*| 0*/;
 
+  // Mike-ADDED: number of VERSIONS, every vertex has a size lane per version size
+  private static final int LANES = 3;
+
+  // Mike-ADDED: modes by compacted ordinal
+  static final Mode[] MODES = { Mode.KANJI, Mode.ALPHANUMERIC, Mode.NUMERIC, Mode.BYTE };
+
   // List of encoders that potentially encode characters not in ISO-8859-1 in one byte.
-  private static final CharsetEncoder[] ENCODERS; // Mike-CHANGED from ArrayList to array
+  // Mike-CHANGED from ArrayList of shared CharsetEncoders to array of charsets, see CharsetTable
+  private static final Charset[] CHARSETS;
   static { // Mike-CHANGED encoder search algorithm
-    ArrayList<CharsetEncoder> encoders = new ArrayList<>(24);
+    ArrayList<Charset> encoders = new ArrayList<>(24);
     StringBuilder sb = new StringBuilder("ISO-8859-");
     tryAddEncoder(encoders, sb, 2, 12);
     tryAddEncoder(encoders, sb, 13, 17);
     sb.delete(0, sb.length()).append("windows-125");
     tryAddEncoder(encoders, sb, 0, 9);
     tryAddEncoder(encoders, "Shift_JIS");
-    ENCODERS = encoders.toArray(new CharsetEncoder[encoders.size()]);
+    CHARSETS = encoders.toArray(new Charset[encoders.size()]);
   }
-  private static void tryAddEncoder(ArrayList<CharsetEncoder> into, StringBuilder sb, int start, int until) {
+  private static void tryAddEncoder(ArrayList<Charset> into, StringBuilder sb, int start, int until) {
     int length = sb.length();
     for (int i = start; i < until; i++) {
       tryAddEncoder(into, sb.append(i).toString());
       sb.setLength(length);
     }
   }
-  private static void tryAddEncoder(ArrayList<CharsetEncoder> into, String name) {
+  private static void tryAddEncoder(ArrayList<Charset> into, String name) {
     if (Encoder.eciByName(name) != null) {
       try {
-        into.add(Charset.forName(name).newEncoder());
+        into.add(Charset.forName(name));
       } catch (UnsupportedCharsetException e) {
         // continue
       }
@@ -91,16 +97,16 @@ final class MinimalEncoder {
 
   // Mike-REMOVED instance fields, version, encode
   static List<ResultNode> encode(
-      String stringToEncode, Charset priorityCharset, boolean isGS1, ErrorCorrectionLevel ecLevel, int[] outVersion
+      CharSequence stringToEncode, Charset priorityCharset, boolean isGS1, ErrorCorrectionLevel ecLevel, int[] outVersion
   ) throws WriterException {
     // Mike-CHANGED inlined constructor contents
-    List<CharsetEncoder> neededEncoders = new ArrayList<>();
-    neededEncoders.add(StandardCharsets.ISO_8859_1.newEncoder());
+    List<CharsetTable> neededEncoders = new ArrayList<>();
+    neededEncoders.add(CharsetTable.ISO_8859_1); // Mike-CHANGED: shared immutable tables instead of encoders
     boolean needUnicodeEncoder = priorityCharset != null && priorityCharset.name().startsWith("UTF");
 
     for (int i = 0; i < stringToEncode.length(); i++) {
       boolean canEncode = false;
-      for (CharsetEncoder encoder : neededEncoders) {
+      for (CharsetTable encoder : neededEncoders) {
         if (encoder.canEncode(stringToEncode.charAt(i))) {
           canEncode = true;
           break;
@@ -108,7 +114,8 @@ final class MinimalEncoder {
       }
 
       if (!canEncode) {
-        for (CharsetEncoder encoder : ENCODERS) {
+        for (Charset charset : CHARSETS) {
+          CharsetTable encoder = CharsetTable.forCharset(charset);
           if (encoder.canEncode(stringToEncode.charAt(i))) {
             neededEncoders.add(encoder);
             canEncode = true;
@@ -122,40 +129,47 @@ final class MinimalEncoder {
       }
     }
 
-    CharsetEncoder[] encoders;
+    CharsetTable[] encoders;
     if (neededEncoders.size() == 1 && !needUnicodeEncoder) {
-      encoders = new CharsetEncoder[] { neededEncoders.get(0) };
+      encoders = new CharsetTable[] { neededEncoders.get(0) };
     } else {
-      encoders = new CharsetEncoder[neededEncoders.size() + 2];
+      encoders = new CharsetTable[neededEncoders.size() + 2];
       int index = 0;
-      for (CharsetEncoder encoder : neededEncoders) {
+      for (CharsetTable encoder : neededEncoders) {
         encoders[index++] = encoder;
       }
 
-      encoders[index] = StandardCharsets.UTF_8.newEncoder();
-      encoders[index + 1] = StandardCharsets.UTF_16BE.newEncoder();
+      encoders[index] = CharsetTable.UTF_8;
+      encoders[index + 1] = CharsetTable.UTF_16BE;
     }
 
     int priorityEncoderIndex = -1;
     if (priorityCharset != null) {
       for (int i = 0; i < encoders.length; i++) {
-        if (encoders[i] != null && priorityCharset.name().equals(encoders[i].charset().name())) {
+        if (encoders[i] != null && priorityCharset.name().equals(encoders[i].charset.name())) {
           priorityEncoderIndex = i;
           break;
         }
       }
     }
 
+    int[] byteOffsets = byteOffsets(stringToEncode, encoders); // Mike-ADDED
+
     // compute minimal encoding trying the three version sizes.
+    // Mike-CHANGED: in a single pass over the graph, see encodeAllVersionSizes
+    int[] solutions = new int[LANES];
+    int[] previousVertices =
+        encodeAllVersionSizes(stringToEncode, encoders, byteOffsets, priorityEncoderIndex, solutions);
     List<ResultNode> result = null;
     int smallestSize = Integer.MAX_VALUE;
     int smallestResult = -1;
-    for (int i = 0; i < 3; i++) {
+    for (int i = 0; i < LANES; i++) {
       // Mike-CHANGED generation algorithm and added setting outVersion
       int tryVersion = (VERSIONS >>> (8 * (i + 1))) & 0xFF;
       int prevOutVersion = outVersion[0];
-      outVersion[0] = tryVersion; // Mike-ADDED arguments:
-      List<ResultNode> r = encodeSpecificVersion(stringToEncode, encoders, priorityEncoderIndex, outVersion, isGS1, ecLevel);
+      outVersion[0] = tryVersion;
+      List<ResultNode> r = ResultList(
+          outVersion, solutions[i], i, previousVertices, isGS1, ecLevel, encoders, byteOffsets, stringToEncode);
       int size = getSize(r, outVersion[0]);
       if (Encoder.willFit(size, tryVersion, ecLevel) && size < smallestSize) {
         smallestSize = size;
@@ -180,7 +194,7 @@ final class MinimalEncoder {
   // replaced enum switch with ordinal switch; made static
   static boolean canEncode(Mode mode, char c) {
     switch (mode.ordinal()) {
-      case 0: return Encoder.isOnlyDoubleByteKanji(String.valueOf(c));
+      case 0: return Encoder.kanjiCode(c) != -1; // Mike-CHANGED: table lookup instead of String and getBytes
       case 1: return Encoder.getAlphanumericCode(c) != -1;
       case 2: return c >= '0' && c <= '9';
       case 3: return true; // any character can be encoded as byte(s). Up to the caller to manage splitting into
@@ -201,52 +215,101 @@ final class MinimalEncoder {
     }
   }
 
-  // Mike-CHANGED: made static, simplified contents
-  static void addEdge(List<Edge>[][][] edges, int position, Edge edge) {
-    int vertexIndex = position + edge.characterLength;
-    List<Edge>[] edgesList = edges[vertexIndex][edge.charsetEncoderIndex];
-    int ordinal = getCompactedOrdinal(edge.mode);
-    if (edgesList[ordinal] == null) edgesList[ordinal] = new ArrayList<>();
-    edgesList[ordinal].add(edge);
+  // Mike-CHANGED: replaced Edge objects and lists with the best size and source vertex per vertex and version size,
+  // vertex index is (position * encoders.length + encoderIndex) * 4 + getCompactedOrdinal(mode),
+  // its lanes are at vertex * LANES + versionSize.
+  // The first edge with the minimal size wins, just like the first minimal one in a list of edges.
+  static void addEdge(int[] sizes, int[] previousVertices, Mode mode, int fromPosition, int charsetEncoderIndex,
+                      int characterLength, int previousVertex, CharSequence stringToEncode,
+                      CharsetTable[] encoders, int[] byteOffsets) {
+    int encoderCount = encoders.length;
+    int previousEncoderIndex = previousVertex < 0 ? -1 : (previousVertex >>> 2) % encoderCount;
+    if (mode != Mode.BYTE && previousVertex >= 0) {
+      charsetEncoderIndex = previousEncoderIndex; // inherit the encoding if not of type BYTE
+    }
+
+    int size = 0; // Mike-CHANGED: edge size without the header, the latter depends on version
+
+    boolean needECI = mode == Mode.BYTE && (previousVertex < 0
+        ? charsetEncoderIndex != 0 // at the beginning and charset is not ISO-8859-1
+        : charsetEncoderIndex != previousEncoderIndex);
+
+    int ordinal = getCompactedOrdinal(mode);
+    boolean header = previousVertex < 0 || ordinal != (previousVertex & 3) || needECI;
+    switch (ordinal) {
+      case 0:
+        size += 13;
+        break;
+      case 1:
+        size += characterLength == 1 ? 6 : 11;
+        break;
+      case 2:
+        size += characterLength == 1 ? 4 : characterLength == 2 ? 7 : 10;
+        break;
+      case 3:
+        size += 8 * byteCount(byteOffsets, stringToEncode.length(), charsetEncoderIndex, fromPosition, characterLength);
+        if (needECI) {
+          size += 4 + 8; // the ECI assignment numbers for ISO-8859-x, UTF-8 and UTF-16 are all 8 bit long
+        }
+        break;
+    }
+
+    int vertex = ((fromPosition + characterLength) * encoderCount + charsetEncoderIndex) * 4 + ordinal;
+    for (int lane = 0; lane < LANES; lane++) {
+      int laneSize = previousVertex < 0 ? size : sizes[previousVertex * LANES + lane] + size;
+      if (header) {
+        laneSize += 4 + mode.getCharacterCountBits((VERSIONS >>> (8 * (lane + 1))) & 0xFF);
+      }
+      if (laneSize < sizes[vertex * LANES + lane]) {
+        sizes[vertex * LANES + lane] = laneSize;
+        previousVertices[vertex * LANES + lane] = previousVertex;
+      }
+    }
   }
 
-  // Mike-CHANGED made static
-  static void addEdges(int version, List<Edge>[][][] edges, int from, Edge previous,
-                CharsetEncoder[] encoders, int priorityEncoderIndex, String stringToEncode) { // Mike-ADDED params
+  // Mike-CHANGED made static, relaxing edges in place
+  static void addEdges(int[] sizes, int[] previousVertices, int from, int previous,
+                CharsetTable[] encoders, int[] byteOffsets, int priorityEncoderIndex, // Mike-ADDED params
+                CharSequence stringToEncode) {
+    char c = stringToEncode.charAt(from);
     int start = 0;
     int end = encoders.length;
-    if (priorityEncoderIndex >= 0 && encoders[priorityEncoderIndex].canEncode(stringToEncode.charAt(from))) {
+    if (priorityEncoderIndex >= 0 && encoders[priorityEncoderIndex].canEncode(c)) {
       start = priorityEncoderIndex;
       end = priorityEncoderIndex + 1;
     }
 
-    // Mike-CHANGED passing stringToEncode and encoders to Edge constructor to avoid capturing
     for (int i = start; i < end; i++) {
-      if (encoders[i].canEncode(stringToEncode.charAt(from))) {
-        addEdge(edges, from, new Edge(Mode.BYTE, from, i, 1, previous, version, stringToEncode, encoders));
+      if (encoders[i].canEncode(c)) {
+        addEdge(sizes, previousVertices, Mode.BYTE, from, i, 1, previous, stringToEncode, encoders,
+            byteOffsets);
       }
     }
 
-    if (canEncode(Mode.KANJI, stringToEncode.charAt(from))) {
-      addEdge(edges, from, new Edge(Mode.KANJI, from, 0, 1, previous, version, stringToEncode, encoders));
+    if (canEncode(Mode.KANJI, c)) {
+      addEdge(sizes, previousVertices, Mode.KANJI, from, 0, 1, previous, stringToEncode, encoders,
+          byteOffsets);
     }
 
     int inputLength = stringToEncode.length();
-    if (canEncode(Mode.ALPHANUMERIC, stringToEncode.charAt(from))) {
-      addEdge(edges, from, new Edge(Mode.ALPHANUMERIC, from, 0, from + 1 >= inputLength ||
-          !canEncode(Mode.ALPHANUMERIC, stringToEncode.charAt(from + 1)) ? 1 : 2, previous, version, stringToEncode, encoders));
+    if (canEncode(Mode.ALPHANUMERIC, c)) {
+      addEdge(sizes, previousVertices, Mode.ALPHANUMERIC, from, 0, from + 1 >= inputLength ||
+          !canEncode(Mode.ALPHANUMERIC, stringToEncode.charAt(from + 1)) ? 1 : 2, previous, stringToEncode,
+          encoders, byteOffsets);
     }
 
-    if (canEncode(Mode.NUMERIC, stringToEncode.charAt(from))) {
-      addEdge(edges, from, new Edge(Mode.NUMERIC, from, 0, from + 1 >= inputLength ||
+    if (canEncode(Mode.NUMERIC, c)) {
+      addEdge(sizes, previousVertices, Mode.NUMERIC, from, 0, from + 1 >= inputLength ||
           !canEncode(Mode.NUMERIC, stringToEncode.charAt(from + 1)) ? 1 : from + 2 >= inputLength ||
-          !canEncode(Mode.NUMERIC, stringToEncode.charAt(from + 2)) ? 2 : 3, previous, version, stringToEncode, encoders));
+          !canEncode(Mode.NUMERIC, stringToEncode.charAt(from + 2)) ? 2 : 3, previous, stringToEncode,
+          encoders, byteOffsets);
     }
-    // END Mike-CHANGED
   }
-  // Mike-CHANGED to return list without a wrapper; made version parameter inout
-  static List<ResultNode> encodeSpecificVersion( // Mike-CHANGED: made static, added params
-      String stringToEncode, CharsetEncoder[] encoders, int priorityEncoderIndex, int[] version, boolean isGS1, ErrorCorrectionLevel ecLevel
+  // Mike-CHANGED: replaced encodeSpecificVersion with a single pass for all version sizes,
+  // edges are the same for all of them, only the character count indicator width differs.
+  // Returns source vertices by vertex lanes, fills solutions with the final vertex per version size.
+  static int[] encodeAllVersionSizes(
+      CharSequence stringToEncode, CharsetTable[] encoders, int[] byteOffsets, int priorityEncoderIndex, int[] solutions
   ) throws WriterException {
 
     @SuppressWarnings("checkstyle:lineLength")
@@ -361,145 +424,103 @@ final class MinimalEncoder {
 
     int inputLength = stringToEncode.length();
 
-    // Array that represents vertices. There is a vertex for every character, encoding and mode. The vertex contains
-    // a list of all edges that lead to it that have the same encoding and mode.
-    // The lists are created lazily
-
-    // The last dimension in the array below encodes the 4 modes KANJI, ALPHANUMERIC, NUMERIC and BYTE via the
-    // function getCompactedOrdinal(Mode)
-    @SuppressWarnings("unchecked")
-    List<Edge>[][][] edges = new ArrayList[inputLength + 1][encoders.length][4];
-    int v = version[0];
-    addEdges(v, edges, 0, null, encoders, priorityEncoderIndex, stringToEncode); // Mike-ADDED arguments
-
-    for (int i = 1; i <= inputLength; i++) {
-      for (int j = 0; j < encoders.length; j++) {
-        for (int k = 0; k < 4; k++) {
-          Edge minimalEdge;
-          if (edges[i][j][k] != null) {
-            List<Edge> localEdges = edges[i][j][k];
-            int minimalIndex = -1;
-            int minimalSize = Integer.MAX_VALUE;
-            for (int l = 0; l < localEdges.size(); l++) {
-              Edge edge = localEdges.get(l);
-              if (edge.cachedTotalSize < minimalSize) {
-                minimalIndex = l;
-                minimalSize = edge.cachedTotalSize;
-              }
-            }
-         // assert minimalIndex != -1; Mike-REMOVED
-            minimalEdge = localEdges.get(minimalIndex);
-            localEdges.clear();
-            localEdges.add(minimalEdge);
-            if (i < inputLength) {
-              addEdges(v, edges, i, minimalEdge, encoders, priorityEncoderIndex, stringToEncode); // Mike-ADDED args
-            }
-          }
+    // Mike-CHANGED: vertices are processed in order, so the only edge which matters for a vertex is the shortest one
+    // leading to it. Instead of lists of edges, every vertex keeps the total size of that edge and its source vertex,
+    // -1 for the initial one. Vertex index is (position * encoders.length + encoderIndex) * 4 + compacted mode ordinal,
+    // see getCompactedOrdinal(Mode). Every vertex has LANES of these, one per version size.
+    // All the lanes of a vertex are reached by the same edges, so the first one tells whether the vertex is reached.
+    int verticesPerPosition = encoders.length * 4;
+    int[] sizes = new int[(inputLength + 1) * verticesPerPosition * LANES];
+    Arrays.fill(sizes, Integer.MAX_VALUE);
+    int[] previousVertices = new int[sizes.length];
+    // Mike-ADDED args
+    addEdges(sizes, previousVertices, 0, -1, encoders, byteOffsets, priorityEncoderIndex, stringToEncode);
+
+    for (int i = 1; i < inputLength; i++) {
+      for (int vertex = i * verticesPerPosition, end = vertex + verticesPerPosition; vertex < end; vertex++) {
+        if (sizes[vertex * LANES] != Integer.MAX_VALUE) {
+          addEdges(sizes, previousVertices, i, vertex, encoders, byteOffsets, priorityEncoderIndex, stringToEncode);
         }
       }
-
     }
-    int minimalJ = -1;
-    int minimalK = -1;
-    int minimalSize = Integer.MAX_VALUE;
-    for (int j = 0; j < encoders.length; j++) {
-      for (int k = 0; k < 4; k++) {
-        if (edges[inputLength][j][k] != null) {
-          List<Edge> localEdges = edges[inputLength][j][k];
-       // assert localEdges.size() == 1; Mike-REMOVED
-          Edge edge = localEdges.get(0);
-          if (edge.cachedTotalSize < minimalSize) {
-            minimalSize = edge.cachedTotalSize;
-            minimalJ = j;
-            minimalK = k;
-          }
+    for (int lane = 0; lane < LANES; lane++) {
+      int minimalVertex = -1;
+      int minimalSize = Integer.MAX_VALUE;
+      for (int vertex = inputLength * verticesPerPosition; vertex < (inputLength + 1) * verticesPerPosition; vertex++) {
+        if (sizes[vertex * LANES + lane] < minimalSize) {
+          minimalSize = sizes[vertex * LANES + lane];
+          minimalVertex = vertex;
         }
       }
+      if (minimalVertex < 0) {
+        throw new WriterException("Internal error: failed to encode \"" + stringToEncode + "\"");
+      }
+      solutions[lane] = minimalVertex;
     }
-    if (minimalJ < 0) {
-      throw new WriterException("Internal error: failed to encode \"" + stringToEncode + "\"");
-    }
-    return ResultList(version, edges[inputLength][minimalJ][minimalK].get(0), isGS1, ecLevel, encoders, stringToEncode);
+    return previousVertices;
   }
 
-  private static final class Edge { // Mike-CHANGED visibilities to package-private; added static modifier
-    final Mode mode;
-    final int fromPosition;
-    final int charsetEncoderIndex;
-    final int characterLength;
-    final Edge previous;
-    final int cachedTotalSize;
-
-    Edge(Mode mode, int fromPosition, int charsetEncoderIndex, int characterLength, Edge previous, int version,
-         String stringToEncode, CharsetEncoder[] encoders) { // Mike-ADDED params
-      this.mode = mode;
-      this.fromPosition = fromPosition;
-      this.charsetEncoderIndex = mode == Mode.BYTE || previous == null ? charsetEncoderIndex :
-          previous.charsetEncoderIndex; // inherit the encoding if not of type BYTE
-      this.characterLength = characterLength;
-      this.previous = previous;
-
-      int size = previous != null ? previous.cachedTotalSize : 0;
+  // Mike-REMOVED uglyFuckingByteCount, which did substring().getBytes() for every BYTE edge and node
 
-      boolean needECI = mode == Mode.BYTE &&
-          (previous == null && this.charsetEncoderIndex != 0) || // at the beginning and charset is not ISO-8859-1
-          (previous != null && this.charsetEncoderIndex != previous.charsetEncoderIndex);
-
-      if (previous == null || mode != previous.mode || needECI) {
-        size += 4 + mode.getCharacterCountBits(version);
-      }
-      switch (mode.ordinal()) { // Mike-CHANGED: int switch instead of enum one
-        case 0:
-          size += 13;
-          break;
-        case 1:
-          size += characterLength == 1 ? 6 : 11;
-          break;
-        case 2:
-          size += characterLength == 1 ? 4 : characterLength == 2 ? 7 : 10;
-          break;
-        case 3: // Mike-CHANGED outlined method
-          size += 8 * uglyFuckingByteCount(stringToEncode, encoders[charsetEncoderIndex], fromPosition, characterLength);
-          if (needECI) {
-            size += 4 + 8; // the ECI assignment numbers for ISO-8859-x, UTF-8 and UTF-16 are all 8 bit long
-          }
-          break;
+  /**
+   * Mike-ADDED: encoded lengths of all prefixes of the input for every encoder. The length of the first {@code i}
+   * characters in {@code encoders[e]} is at {@code e * (stringToEncode.length() + 1) + i}.
+   * BYTE edges and nodes only cover characters their encoder can encode, and all the encoders are stateless,
+   * so the length of a range is the sum of lengths of its characters.
+   */
+  static int[] byteOffsets(CharSequence stringToEncode, CharsetTable[] encoders) {
+    int inputLength = stringToEncode.length();
+    int[] offsets = new int[encoders.length * (inputLength + 1)];
+    for (int e = 0, base = 0; e < encoders.length; e++, base += inputLength + 1) {
+      CharsetTable encoder = encoders[e];
+      for (int i = 0, total = 0; i < inputLength; i++) {
+        offsets[base + i + 1] = total += encoder.byteLength(stringToEncode.charAt(i));
       }
-      cachedTotalSize = size;
     }
+    return offsets;
   }
 
   // Mike-ADDED
-  static int uglyFuckingByteCount(String stringToEncode, CharsetEncoder encoder, int fromPosition, int characterLength) {
-    return stringToEncode.substring(fromPosition, fromPosition + characterLength).getBytes(encoder.charset()).length;
+  static int byteCount(int[] byteOffsets, int inputLength, int encoderIndex, int fromPosition, int characterLength) {
+    int from = encoderIndex * (inputLength + 1) + fromPosition;
+    return byteOffsets[from + characterLength] - byteOffsets[from];
   }
 
-  // Mike-CHANGED replaced class with a static method
-  static List<ResultNode> ResultList(int[] version, Edge solution, boolean isGS1, ErrorCorrectionLevel ecLevel, CharsetEncoder[] encoders, String stringToEncode) {
+  // Mike-CHANGED replaced class with a static method, walking vertices instead of edges
+  static List<ResultNode> ResultList(int[] version, int solution, int lane, int[] previousVertices, boolean isGS1,
+                                     ErrorCorrectionLevel ecLevel, CharsetTable[] encoders, int[] byteOffsets,
+                                     CharSequence stringToEncode) {
+    int verticesPerPosition = encoders.length * 4;
     int length = 0;
-    Edge current = solution;
+    int current = solution;
     boolean containsECI = false;
 
     List<ResultNode> list = new ArrayList<>();
-    while (current != null) {
-      length += current.characterLength;
-      Edge previous = current.previous;
+    while (current >= 0) {
+      int previous = previousVertices[current * LANES + lane];
+      int fromPosition = previous < 0 ? 0 : previous / verticesPerPosition;
+      length += current / verticesPerPosition - fromPosition;
+      Mode mode = MODES[current & 3];
+      int charsetEncoderIndex = (current >>> 2) % encoders.length;
 
-      boolean needECI = current.mode == Mode.BYTE &&
-          (previous == null && current.charsetEncoderIndex != 0) || // at the beginning and charset is not ISO-8859-1
-          (previous != null && current.charsetEncoderIndex != previous.charsetEncoderIndex);
+      boolean needECI = mode == Mode.BYTE && (previous < 0
+          ? charsetEncoderIndex != 0 // at the beginning and charset is not ISO-8859-1
+          : charsetEncoderIndex != (previous >>> 2) % encoders.length);
 
       if (needECI) {
         containsECI = true;
       }
 
-      if (previous == null || previous.mode != current.mode || needECI) {
-        list.add(0, new ResultNode(current.mode, current.fromPosition, encoders[current.charsetEncoderIndex], length, stringToEncode));
+      if (previous < 0 || (previous & 3) != (current & 3) || needECI) {
+        int byteLength = mode == Mode.BYTE
+            ? byteCount(byteOffsets, stringToEncode.length(), charsetEncoderIndex, fromPosition, length) : 0;
+        list.add(0, new ResultNode(mode, fromPosition, encoders[charsetEncoderIndex], length, byteLength,
+            stringToEncode));
         length = 0;
       }
 
       if (needECI) {
-        list.add(0, new ResultNode(Mode.ECI, current.fromPosition, encoders[current.charsetEncoderIndex], 0, stringToEncode));
+        list.add(0, new ResultNode(Mode.ECI, fromPosition, encoders[charsetEncoderIndex], 0, 0, stringToEncode));
       }
       current = previous;
     }
@@ -510,11 +531,11 @@ final class MinimalEncoder {
       ResultNode first = list.get(0);
       if (first != null && first.mode != Mode.ECI && containsECI) {
         // prepend a default character set ECI
-        list.add(0, new ResultNode(Mode.ECI, 0, null, 0, stringToEncode));
+        list.add(0, new ResultNode(Mode.ECI, 0, null, 0, 0, stringToEncode));
       }
       first = list.get(0);
       // prepend or insert a FNC1_FIRST_POSITION after the ECI (if any)
-      list.add(first.mode != Mode.ECI ? 0 : 1, new ResultNode(Mode.FNC1_FIRST_POSITION, 0, null, 0, stringToEncode));
+      list.add(first.mode != Mode.ECI ? 0 : 1, new ResultNode(Mode.FNC1_FIRST_POSITION, 0, null, 0, 0, stringToEncode));
     }
 
     // set version to smallest version into which the bits fit.
@@ -548,16 +569,19 @@ final class MinimalEncoder {
     // Mike-CHANGED visibility to package-private
     final Mode mode;
     final int fromPosition;
-    final CharsetEncoder encoder;
+    final CharsetTable encoder;
     final int characterLength;
-    final String stringToEncode;
+    final int byteLength; // Mike-ADDED: encoded length in BYTE mode
+    final CharSequence stringToEncode;
     // END Mike-CHANGED
 
-    ResultNode(Mode mode, int fromPosition, CharsetEncoder encoder, int characterLength, String stringToEncode) {
+    ResultNode(Mode mode, int fromPosition, CharsetTable encoder, int characterLength, int byteLength,
+               CharSequence stringToEncode) {
       this.mode = mode;
       this.fromPosition = fromPosition;
       this.encoder = encoder;
       this.characterLength = characterLength;
+      this.byteLength = byteLength;
       this.stringToEncode = stringToEncode;
     }
 
@@ -593,23 +617,25 @@ final class MinimalEncoder {
      * for multi byte encoded characters)
      */
     private int getCharacterCountIndicator() { // Mike-CHANGED outlined method
-      return mode == Mode.BYTE ? uglyFuckingByteCount(stringToEncode, encoder, fromPosition, characterLength) : characterLength;
+      return mode == Mode.BYTE ? byteLength : characterLength; // Mike-CHANGED precomputed
     }
 
     /**
      * appends the bits
      */
-    void getBits(BitArray bits, int version) throws WriterException { // Mike-CHANGED visibility to package-private
+    // Mike-CHANGED visibility to package-private, accepting context for its charset encoder
+    void getBits(BitArray bits, int version, EncoderContext context) throws WriterException {
       bits.appendBits(mode.getBits(), 4);
       if (characterLength > 0) {
         int length = getCharacterCountIndicator();
         bits.appendBits(length, mode.getCharacterCountBits(version));
       }
       if (mode == Mode.ECI) {
-        bits.appendBits(Encoder.eciByName(encoder.charset().name()), 8);
+        bits.appendBits(Encoder.eciByName(encoder.charset.name()), 8);
       } else if (characterLength > 0) {
         // append data
-        Encoder.appendBytes(stringToEncode, fromPosition, fromPosition + characterLength, mode, bits, encoder.charset());
+        Encoder.appendBytes(stringToEncode, fromPosition, fromPosition + characterLength, mode, bits, encoder.charset,
+            context);
       }
     }
     // Mike-REMOVED toString()
@@ -47,6 +47,17 @@ public final class QRCode {
 
   // Mike-REMOVED getters, toString, setters
 
+  private SymbolMatrix symbolMatrix; // Mike-ADDED, racy single-check: at worst, built twice from the same matrix
+
+  /**
+   * Mike-ADDED: {@link #matrix} packed 1 bit per module, for renderers which copy rows or draw spans.
+   * Built once and cached: {@link #matrix} must not be modified after this is called.
+   */
+  public SymbolMatrix symbolMatrix() {
+    SymbolMatrix symbolMatrix = this.symbolMatrix;
+    return symbolMatrix != null ? symbolMatrix : (this.symbolMatrix = SymbolMatrix.from(matrix));
+  }
+
   // Check if "mask_pattern" is valid.
   public static boolean isValidMaskPattern(int maskPattern) {
     return maskPattern >= 0 && maskPattern < NUM_MASK_PATTERNS;
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.qrcode.decoder.Mode;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mike-ADDED: a caller-specified segment, for content of known structure,
+ * e.g. a URL prefix in BYTE mode followed by a NUMERIC identifier.
+ * See {@link Encoder#encodeSegments(java.util.List, com.google.zxing.qrcode.decoder.ErrorCorrectionLevel,
+ * java.util.Map, EncoderContext)}.
+ *
+ * <p>Data bits are written and validated once, when a segment is created, so segments are immutable,
+ * can be shared between threads, and encoding them does no mode detection at all.</p>
+ */
+public final class Segment {
+
+  static final int DEFAULT_ECI = Encoder.eciByName(StandardCharsets.ISO_8859_1.name());
+
+  public final Mode mode;
+  final int numLetters;
+  final int eci; // -1 for none
+  final BitArray data;
+
+  private Segment(Mode mode, int numLetters, int eci, BitArray data) {
+    this.mode = mode;
+    this.numLetters = numLetters;
+    this.eci = eci;
+    this.data = data;
+  }
+
+  /**
+   * @throws WriterException if there are characters other than digits in the range
+   */
+  public static Segment numeric(CharSequence content, int start, int end) throws WriterException {
+    checkRange(content.length(), start, end);
+    for (int i = start; i < end; i++) {
+      char c = content.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new WriterException("Not a digit at " + i);
+      }
+    }
+    return text(Mode.NUMERIC, content, start, end);
+  }
+
+  /**
+   * @throws WriterException if there are characters out of ALPHANUMERIC mode character set in the range
+   */
+  public static Segment alphanumeric(CharSequence content, int start, int end) throws WriterException {
+    checkRange(content.length(), start, end);
+    for (int i = start; i < end; i++) {
+      if (Encoder.getAlphanumericCode(content.charAt(i)) == -1) {
+        throw new WriterException("Not alphanumeric at " + i);
+      }
+    }
+    return text(Mode.ALPHANUMERIC, content, start, end);
+  }
+
+  /**
+   * @throws WriterException if there are characters which are not double-byte Shift_JIS Kanji in the range
+   */
+  public static Segment kanji(CharSequence content, int start, int end) throws WriterException {
+    checkRange(content.length(), start, end);
+    for (int i = start; i < end; i++) {
+      if (Encoder.kanjiCode(content.charAt(i)) == -1) {
+        throw new WriterException("Not Kanji at " + i);
+      }
+    }
+    return text(Mode.KANJI, content, start, end);
+  }
+
+  /**
+   * Characters encoded with {@code charset}. An ECI segment declaring the charset is written before this one
+   * unless the charset is already in effect, ISO-8859-1 at the beginning of a symbol.
+   * @throws WriterException if there is no ECI for {@code charset}, or there are characters it can't encode
+   *   in the range
+   */
+  public static Segment bytes(CharSequence content, int start, int end, Charset charset) throws WriterException {
+    checkRange(content.length(), start, end);
+    int eci = eci(charset);
+    checkEncodable(content, start, end, charset);
+    BitArray data = new BitArray();
+    // no context: segments are built once and reused, so a fresh encoder and buffer are cheap enough
+    Encoder.append8BitBytes(content, data, start, end, charset);
+    return bytes(data, eci);
+  }
+
+  /**
+   * Already encoded bytes, copied.
+   * @param eciCharset charset of the bytes which is declared with an ECI segment if not in effect yet,
+   *   {@code null} for no ECI
+   * @throws WriterException if there is no ECI for {@code eciCharset}
+   */
+  public static Segment bytes(byte[] content, int offset, int length, Charset eciCharset) throws WriterException {
+    checkRange(content.length, offset, offset + length);
+    int eci = eciCharset == null ? -1 : eci(eciCharset);
+    BitArray data = new BitArray();
+    data.appendBytes(content, offset, length);
+    return bytes(data, eci);
+  }
+
+  private static Segment text(Mode mode, CharSequence content, int start, int end) throws WriterException {
+    BitArray data = new BitArray();
+    Encoder.appendBytes(content, start, end, mode, data, null);
+    return new Segment(mode, end - start, -1, data);
+  }
+
+  private static Segment bytes(BitArray data, int eci) throws WriterException {
+    int numBytes = data.getSizeInBytes();
+    if (numBytes >= 1 << 16) {
+      throw new WriterException("Data too big");
+    }
+    return new Segment(Mode.BYTE, numBytes, eci, data);
+  }
+
+  /**
+   * Fails instead of writing '?' for a character. The table answers for most characters,
+   * an encoder only for the ones it can't tell, i.e. surrogate pairs and characters taking more than 2 bytes.
+   */
+  private static void checkEncodable(CharSequence content, int start, int end, Charset charset)
+      throws WriterException {
+    CharsetTable table = CharsetTable.forCharset(charset);
+    CharsetEncoder encoder = null;
+    for (int i = start; i < end; i++) {
+      char c = content.charAt(i);
+      if (table.canEncode(c)) {
+        continue;
+      }
+      int length = Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(content.charAt(i + 1))
+          ? 2 : 1;
+      if (encoder == null) {
+        encoder = charset.newEncoder(); // reports errors
+      }
+      if (!encoder.canEncode(content.subSequence(i, i + length))) {
+        throw new WriterException("Can't encode character at " + i + " in " + charset);
+      }
+      i += length - 1;
+    }
+  }
+
+  private static int eci(Charset charset) throws WriterException {
+    Integer eci = Encoder.eciByName(charset.name());
+    if (eci == null) {
+      throw new WriterException("No ECI for " + charset);
+    }
+    return eci;
+  }
+
+  private static void checkRange(int length, int start, int end) {
+    if (start < 0 || start > end || end > length) {
+      throw new IndexOutOfBoundsException("[" + start + ", " + end + ") out of [0, " + length + ")");
+    }
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+/**
+ * Mike-ADDED: a finished symbol, 1 bit per module, 1 is dark. Unlike {@link ByteMatrix}, has no "empty" state.
+ * Every row takes {@code (width + 63) / 64} longs, the least significant bit of the first one is x = 0.
+ * Rows can be copied in bulk, and dark runs can be iterated, so renderers can draw spans:
+ * <pre>{@code
+ * for (int x = m.nextDark(0, y); x < m.width; ) {
+ *   int end = m.nextLight(x, y);
+ *   drawSpan(x, y, end - x);
+ *   x = m.nextDark(end, y);
+ * }
+ * }</pre>
+ */
+public final class SymbolMatrix {
+
+  public final int width;
+  public final int height;
+  private final int rowWords;
+  private final long[] bits;
+
+  SymbolMatrix(int width, int height, long[] bits) {
+    this.width = width;
+    this.height = height;
+    this.rowWords = (width + 63) >>> 6;
+    this.bits = bits;
+  }
+
+  /**
+   * Packs a matrix. Empty (-1) modules become light.
+   */
+  public static SymbolMatrix from(ByteMatrix matrix) {
+    int rowWords = (matrix.width + 63) >>> 6;
+    long[] bits = new long[rowWords * matrix.height];
+    for (int y = 0; y < matrix.height; y++) {
+      matrix.getRowBits(y, bits, y * rowWords);
+    }
+    return new SymbolMatrix(matrix.width, matrix.height, bits);
+  }
+
+  public boolean get(int x, int y) {
+    return (bits[y * rowWords + (x >>> 6)] >>> x & 1) != 0;
+  }
+
+  /**
+   * Copies row {@code y}, the least significant bit of {@code dst[offset]} is x = 0.
+   * @return number of longs written, {@code (width + 63) / 64}
+   */
+  public int getRow(int y, long[] dst, int offset) {
+    System.arraycopy(bits, y * rowWords, dst, offset, rowWords);
+    return rowWords;
+  }
+
+  /**
+   * Copies row {@code y}, the least significant bit of {@code dst[offset]} is x = 0.
+   * @return number of ints written, {@code (width + 31) / 32}
+   */
+  public int getRow(int y, int[] dst, int offset) {
+    int count = (width + 31) >>> 5;
+    for (int i = 0, base = y * rowWords; i < count; i++) {
+      dst[offset + i] = (int) (bits[base + (i >>> 1)] >>> ((i & 1) << 5));
+    }
+    return count;
+  }
+
+  /**
+   * Copies row {@code y} like a row of a 1-bit image: the most significant bit of {@code dst[offset]} is x = 0.
+   * @return number of bytes written, {@code (width + 7) / 8}
+   */
+  public int getRow(int y, byte[] dst, int offset) {
+    int count = (width + 7) >>> 3;
+    for (int i = 0, base = y * rowWords; i < count; i++) {
+      int b = (int) (bits[base + (i >>> 3)] >>> ((i & 7) << 3));
+      dst[offset + i] = (byte) (Integer.reverse(b) >>> 24);
+    }
+    return count;
+  }
+
+  /**
+   * @return x of the first dark module in row {@code y} at or after {@code x}, or {@code width} if none
+   */
+  public int nextDark(int x, int y) {
+    if (x >= width) {
+      return width;
+    }
+    int base = y * rowWords;
+    int i = x >>> 6;
+    long word = bits[base + i] & (-1L << x);
+    while (word == 0) {
+      if (++i == rowWords) {
+        return width;
+      }
+      word = bits[base + i];
+    }
+    return (i << 6) + Long.numberOfTrailingZeros(word);
+  }
+
+  /**
+   * @return x of the first light module in row {@code y} at or after {@code x}, or {@code width} if none
+   */
+  public int nextLight(int x, int y) {
+    if (x >= width) {
+      return width;
+    }
+    int base = y * rowWords;
+    int i = x >>> 6;
+    long word = ~bits[base + i] & (-1L << x);
+    while (word == 0) {
+      if (++i == rowWords) {
+        return width;
+      }
+      word = ~bits[base + i];
+    }
+    return Math.min(width, (i << 6) + Long.numberOfTrailingZeros(word));
+  }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2026 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.lang.ref.SoftReference;
+
+/**
+ * Mike-ADDED: everything about symbol layout which depends on version only. Instances are immutable and shared,
+ * apart from mask bitboards cached on demand.
+ */
+final class VersionTemplate {
+
+  private static final VersionTemplate[] TEMPLATES = new VersionTemplate[40];
+
+  final int dimension;
+
+  /**
+   * Finder patterns, separators, timing and alignment patterns, dark module, and version info.
+   * Type info and data modules are 0.
+   */
+  final ByteMatrix functionPatterns;
+
+  /**
+   * 1 for function modules (including type info), 0 for data modules.
+   * Every row takes {@code (dimension + 63) / 64} longs, the least significant bit represents the lowest x.
+   */
+  final long[] functionModules;
+
+  /**
+   * Data module positions, {@code (y << 8) | x}, in placement order. See 8.7 of JISX0510:2004 (p.38).
+   */
+  final int[] dataModules;
+
+  /**
+   * Per data module in placement order, bit i is set if mask pattern i flips the module.
+   */
+  final byte[] dataMasks;
+
+  /**
+   * Per error correction level ordinal, block buffer indices of codewords in transmission order,
+   * see {@link Encoder#interleaveOrder(int, int, int)}.
+   */
+  final short[][] interleaveOrder;
+
+  private volatile SoftReference<long[][]> maskBoards;
+
+  private VersionTemplate(int version) throws WriterException {
+    ErrorCorrectionLevel[] ecLevels = ErrorCorrectionLevel.values();
+    interleaveOrder = new short[ecLevels.length][];
+    int numTotalBytes = Encoder.totalCodewordsForVersion(version);
+    for (ErrorCorrectionLevel ecLevel : ecLevels) {
+      interleaveOrder[ecLevel.ordinal()] = Encoder.interleaveOrder(numTotalBytes,
+          numTotalBytes - Encoder.totalECCodewordsForVersion(version, ecLevel),
+          Encoder.numBlocksForVersion(version, ecLevel));
+    }
+
+    int dimension = this.dimension = Encoder.dimensionForVersion(version);
+    ByteMatrix matrix = functionPatterns = new ByteMatrix(dimension, dimension);
+    MatrixUtil.clearMatrix(matrix);
+    MatrixUtil.embedBasicPatterns(version, matrix);
+    // Type info cells are just reserved here
+    MatrixUtil.embedTypeInfo(ErrorCorrectionLevel.L, 0, matrix);
+    MatrixUtil.maybeEmbedVersionInfo(version, matrix);
+
+    int rowWords = (dimension + 63) >>> 6;
+    long[] functionModules = this.functionModules = new long[dimension * rowWords];
+    int dataModuleCount = 0;
+    for (int y = 0; y < dimension; y++) {
+      for (int x = 0; x < dimension; x++) {
+        if (matrix.get(x, y) != -1) {
+          functionModules[y * rowWords + (x >>> 6)] |= 1L << (x & 63);
+        } else {
+          dataModuleCount++;
+        }
+      }
+    }
+
+    // Same walk as MatrixUtil.embedDataBits() does, see 8.7 of JISX0510:2004 (p.38)
+    int[] dataModules = this.dataModules = new int[dataModuleCount];
+    int index = 0;
+    int direction = -1;
+    int x = dimension - 1;
+    int y = dimension - 1;
+    while (x > 0) {
+      // Skip the vertical timing pattern.
+      if (x == 6) {
+        x -= 1;
+      }
+      while (y >= 0 && y < dimension) {
+        for (int i = 0; i < 2; ++i) {
+          int xx = x - i;
+          if (matrix.get(xx, y) == -1) {
+            dataModules[index++] = (y << 8) | xx;
+            matrix.set(xx, y, 0);
+          }
+        }
+        y += direction;
+      }
+      direction = -direction;
+      y += direction;
+      x -= 2;
+    }
+    byte[] dataMasks = this.dataMasks = new byte[dataModuleCount];
+    for (int i = 0; i < dataModuleCount; i++) {
+      int xx = dataModules[i] & 0xFF, yy = dataModules[i] >>> 8;
+      for (int maskPattern = 0; maskPattern < QRCode.NUM_MASK_PATTERNS; maskPattern++) {
+        if (MaskUtil.getDataMaskBit(maskPattern, xx, yy)) {
+          dataMasks[i] |= (byte) (1 << maskPattern);
+        }
+      }
+    }
+    for (int i = 0; i < 15; i++) { // no mask-dependent values in template
+      MatrixUtil.setTypeInfoBit(i, false, matrix);
+    }
+  }
+
+  /**
+   * Data modules flipped by every mask pattern, as bitboards (see {@link MaskUtil#lineWords(int)}):
+   * rows of pattern i at [i], its columns at [{@link QRCode#NUM_MASK_PATTERNS} + i].
+   * Built on first use and softly referenced, so that rarely used versions give the memory back
+   * (about 68 KB for version 40). Callers must not modify them.
+   */
+  long[][] maskBoards() {
+    SoftReference<long[][]> reference = maskBoards;
+    long[][] boards = reference == null ? null : reference.get();
+    if (boards == null) { // racy: at worst, boards are built twice
+      int words = MaskUtil.lineWords(dimension);
+      boards = new long[2 * QRCode.NUM_MASK_PATTERNS][];
+      for (int i = 0; i < boards.length; i++) {
+        boards[i] = new long[dimension * words];
+      }
+      for (int i = 0; i < dataModules.length; i++) {
+        int x = dataModules[i] & 0xFF, y = dataModules[i] >>> 8;
+        for (int masks = dataMasks[i] & 0xFF; masks != 0; masks &= masks - 1) {
+          int maskPattern = Integer.numberOfTrailingZeros(masks);
+          boards[maskPattern][y * words + (x >>> 6)] |= 1L << x;
+          boards[QRCode.NUM_MASK_PATTERNS + maskPattern][x * words + (y >>> 6)] |= 1L << y;
+        }
+      }
+      maskBoards = new SoftReference<>(boards);
+    }
+    return boards;
+  }
+
+  /**
+   * @return shared template for the version, built on first access
+   */
+  static VersionTemplate forVersion(int version) throws WriterException {
+    // Racy lazy initialization is fine since instances are immutable: at worst, a template is built twice.
+    VersionTemplate template = TEMPLATES[version - 1];
+    if (template == null) {
+      TEMPLATES[version - 1] = template = new VersionTemplate(version);
+    }
+    return template;
+  }
+
+}
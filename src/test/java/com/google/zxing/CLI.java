@@ -1,9 +1,9 @@
 package com.google.zxing;
 
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
-import com.google.zxing.qrcode.encoder.ByteMatrix;
 import com.google.zxing.qrcode.encoder.Encoder;
 import com.google.zxing.qrcode.encoder.QRCode;
+import com.google.zxing.qrcode.encoder.SymbolMatrix;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -109,14 +109,14 @@ public final class CLI {
 
     static void spit(boolean binaryOutput, ErrorCorrectionLevel level, String input) throws WriterException {
         QRCode out = Encoder.encode(input, level);
-        ByteMatrix matrix = out.matrix;
+        SymbolMatrix matrix = out.symbolMatrix();
         if (binaryOutput) {
             System.out.write(out.version);
             int currentByte = 0;
             int writtenBits = 0;
             for (int y = 0; y < matrix.height; y++) {
                 for (int x = 0; x < matrix.width; x++) {
-                    currentByte = (currentByte << 1) | matrix.get(x, y);
+                    currentByte = (currentByte << 1) | (matrix.get(x, y) ? 1 : 0);
                     if (++writtenBits == 8) {
                         System.out.write(currentByte);
                         writtenBits = currentByte = 0;
@@ -131,7 +131,7 @@ public final class CLI {
                 printSquare(0, 0);
                 int prev = 0;
                 for (int x = 0; x < matrix.width; x++)
-                    printSquare(prev, prev = matrix.get(x, y));
+                    printSquare(prev, prev = matrix.get(x, y) ? 1 : 0);
                 printSquare(prev, 0);
                 printSquare(0, 0);
                 System.out.println();
@@ -162,6 +162,26 @@ public final class BitArrayTestCase extends Assert {
     assertEquals(Integer.MIN_VALUE, ints[1]);
   }
 
+  @Test
+  public void testToBytes() { // Mike-ADDED
+    Random r = new Random(0xB17E5);
+    BitArray array = new BitArray();
+    for (int i = 0; i < 20; i++) {
+      array.appendBits(r.nextInt(), 32);
+    }
+    for (int bitOffset = 0; bitOffset < 70; bitOffset++) {
+      for (int numBytes = 0; numBytes < 60; numBytes += 7) {
+        byte[] bytes = new byte[numBytes + 2];
+        array.toBytes(bitOffset, bytes, 1, numBytes);
+        assertEquals(0, bytes[0]);
+        assertEquals(0, bytes[numBytes + 1]);
+        for (int i = 0; i < numBytes * 8; i++) {
+          assertEquals(array.get(bitOffset + i), (bytes[1 + i / 8] & (0x80 >>> (i & 7))) != 0);
+        }
+      }
+    }
+  }
+
   @Test
   public void testIsRange() {
     BitArray array = new BitArray(64);
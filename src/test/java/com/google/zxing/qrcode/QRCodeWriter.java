@@ -23,6 +23,7 @@ import com.google.zxing.qrcode.encoder.ByteMatrix;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import com.google.zxing.qrcode.encoder.Encoder;
 import com.google.zxing.qrcode.encoder.QRCode;
+import com.google.zxing.qrcode.encoder.SymbolMatrix;
 
 import java.util.Map;
 
@@ -87,12 +88,13 @@ public final class QRCodeWriter { // Mike-CHANGED: moved to test/, unimplemented
 
     BitMatrix output = new BitMatrix(outputWidth, outputHeight);
 
+    SymbolMatrix symbol = code.symbolMatrix(); // Mike-CHANGED: drawing dark runs instead of single modules
     for (int inputY = 0, outputY = topPadding; inputY < inputHeight; inputY++, outputY += multiple) {
       // Write the contents of this row of the barcode
-      for (int inputX = 0, outputX = leftPadding; inputX < inputWidth; inputX++, outputX += multiple) {
-        if (input.get(inputX, inputY) == 1) {
-          output.setRegion(outputX, outputY, multiple, multiple);
-        }
+      for (int inputX = symbol.nextDark(0, inputY); inputX < inputWidth; ) {
+        int end = symbol.nextLight(inputX, inputY);
+        output.setRegion(leftPadding + inputX * multiple, outputY, (end - inputX) * multiple, multiple);
+        inputX = symbol.nextDark(end, inputY);
       }
     }
 
@@ -21,6 +21,8 @@ import com.google.zxing.common.BitArrayUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Random;
+
 /**
  * @author satorux@google.com (Satoru Takabayashi) - creator
  * @author dswitkin@google.com (Daniel Switkin) - ported from C++
@@ -99,6 +101,63 @@ public final class BitVectorTestCase extends Assert {
     assertEquals(0xff700000L, getUnsignedInt(v));
   }
 
+  @Test
+  public void testAppendBitsUnaligned() { // Mike-ADDED
+    Random random = new Random(0xB175);
+    BitArray v = new BitArray();
+    BitArray expected = new BitArray();
+    for (int i = 0; i < 500; i++) {
+      int value = random.nextInt();
+      int numBits = random.nextInt(33);
+      v.appendBits(value, numBits);
+      for (int bit = numBits - 1; bit >= 0; bit--) {
+        expected.appendBit((value & (1 << bit)) != 0);
+      }
+      assertEquals(expected.getSize(), v.getSize());
+    }
+    assertEquals(BitArrayUtils.toString(expected), BitArrayUtils.toString(v));
+  }
+
+  @Test
+  public void testAppendBitArrayUnaligned() { // Mike-ADDED
+    Random random = new Random(0xB17A);
+    for (int prefix = 0; prefix <= 64; prefix++) {
+      for (int length : new int[] { 0, 1, 31, 32, 33, 64, 95 }) {
+        BitArray v = new BitArray();
+        v.appendBits(random.nextInt(), Math.min(prefix, 32));
+        v.appendBits(random.nextInt(), prefix - Math.min(prefix, 32));
+        BitArray other = new BitArray();
+        for (int i = 0; i < length; i++) {
+          other.appendBit(random.nextBoolean());
+        }
+        String expected = BitArrayUtils.toString(v) + BitArrayUtils.toString(other);
+        v.appendBitArray(other);
+        assertEquals(prefix + length, v.getSize());
+        assertEquals(expected.replace(" ", ""), BitArrayUtils.toString(v).replace(" ", ""));
+      }
+    }
+    BitArray v = new BitArray();
+    v.appendBits(0x5, 3);
+    v.appendBitArray(v);
+    assertEquals(" X.XX.X", BitArrayUtils.toString(v));
+  }
+
+  @Test
+  public void testAppendBytes() { // Mike-ADDED
+    byte[] bytes = { (byte) 0xde, (byte) 0xad, (byte) 0xbe, (byte) 0xef, 0x01, (byte) 0x80, 0x7f };
+    for (int offset = 0; offset < bytes.length; offset++) {
+      BitArray v = new BitArray();
+      v.appendBit(true);
+      BitArray expected = new BitArray();
+      expected.appendBit(true);
+      for (int i = offset; i < bytes.length; i++) {
+        expected.appendBits(bytes[i], 8);
+      }
+      v.appendBytes(bytes, offset, bytes.length - offset);
+      assertEquals(BitArrayUtils.toString(expected), BitArrayUtils.toString(v));
+    }
+  }
+
   @Test
   public void testNumBytes() {
     BitArray v = new BitArray();
@@ -26,9 +26,19 @@ import com.google.zxing.qrcode.decoder.Mode;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author satorux@google.com (Satoru Takabayashi) - creator
@@ -144,6 +154,202 @@ public final class EncoderTestCase extends Assert {
     Encoder.encode("THISMESSAGEISTOOLONGFORAQRCODEVERSION3", ErrorCorrectionLevel.H, hints);
   }
 
+  @Test
+  public void testEncodeWithMaskExecutor() throws WriterException {
+    Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+    hints.put(EncodeHintType.QR_MASK_EXECUTOR, ForkJoinPool.commonPool());
+    StringBuilder content = new StringBuilder("http://example.com/");
+    for (int i = 0; i < 40; i++) {
+      content.append(i * 7919);
+      for (ErrorCorrectionLevel ecLevel : ErrorCorrectionLevel.values()) {
+        QRCode sequential = Encoder.encode(content.toString(), ecLevel);
+        QRCode concurrent = Encoder.encode(content.toString(), ecLevel, hints);
+        assertEquals(QRCodeTestCase.toString(sequential), QRCodeTestCase.toString(concurrent));
+      }
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testEncodeOnMaskExecutorThread() throws Exception { // Mike-ADDED
+    String[] contents = new String[200];
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = "http://example.com/" + i * 7919;
+    }
+    // every worker encodes and evaluates masks on the pool it runs on
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+      hints.put(EncodeHintType.QR_MASK_EXECUTOR, pool);
+      QRCode[] codes = BatchEncoder.encode(contents, ErrorCorrectionLevel.M, hints, pool, null);
+      for (int i = 0; i < contents.length; i++) {
+        assertEquals(QRCodeTestCase.toString(Encoder.encode(contents[i], ErrorCorrectionLevel.M)),
+            QRCodeTestCase.toString(codes[i]));
+      }
+    } finally {
+      pool.shutdown();
+    }
+    // the only thread of the executor waits for nothing queued behind it
+    ExecutorService single = Executors.newSingleThreadExecutor();
+    try {
+      Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+      hints.put(EncodeHintType.QR_MASK_EXECUTOR, single);
+      QRCode code = single.submit(() -> Encoder.encode(contents[1], ErrorCorrectionLevel.H, hints)).get();
+      assertEquals(QRCodeTestCase.toString(Encoder.encode(contents[1], ErrorCorrectionLevel.H)),
+          QRCodeTestCase.toString(code));
+    } finally {
+      single.shutdown();
+    }
+  }
+
+  @Test
+  public void testEncodeWithContext() throws WriterException {
+    EncoderContext context = new EncoderContext();
+    Map<EncodeHintType, Object> compact = new EnumMap<>(EncodeHintType.class);
+    compact.put(EncodeHintType.QR_COMPACT, true);
+    Map<EncodeHintType, Object> masked = new EnumMap<>(EncodeHintType.class);
+    masked.put(EncodeHintType.QR_MASK_PATTERN, 5);
+    Map<EncodeHintType, Object> concurrent = new EnumMap<>(EncodeHintType.class);
+    concurrent.put(EncodeHintType.QR_MASK_EXECUTOR, ForkJoinPool.commonPool());
+    List<Map<EncodeHintType, Object>> hints = Arrays.asList(null, compact, masked, concurrent);
+    QRCode[] reused = new QRCode[120];
+    String[] expected = new String[reused.length];
+    StringBuilder content = new StringBuilder("ABC");
+    for (int i = 0; i < reused.length; i++) {
+      content.append(i % 3 == 0 ? "0123456789" : "x");
+      ErrorCorrectionLevel ecLevel = ErrorCorrectionLevel.values()[i & 3];
+      // the same version several times in a row, then a bigger one, and back to the smallest sometimes
+      String text = i % 7 == 6 ? "1" : content.toString();
+      reused[i] = Encoder.encode(text, ecLevel, hints.get(i % 4), context);
+      expected[i] = QRCodeTestCase.toString(Encoder.encode(text, ecLevel, hints.get(i % 4)));
+    }
+    for (int i = 0; i < reused.length; i++) {
+      assertEquals(expected[i], QRCodeTestCase.toString(reused[i]));
+    }
+  }
+
+  @Test
+  public void testEncodeCharSequenceAndChars() throws WriterException {
+    Map<EncodeHintType, Object> compact = new EnumMap<>(EncodeHintType.class);
+    compact.put(EncodeHintType.QR_COMPACT, true);
+    Map<EncodeHintType, Object> kanji = new EnumMap<>(EncodeHintType.class);
+    kanji.put(EncodeHintType.CHARACTER_SET, "Shift_JIS");
+    Map<EncodeHintType, Object> utf8 = new EnumMap<>(EncodeHintType.class);
+    utf8.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+    List<Map<EncodeHintType, Object>> hints = Arrays.asList(null, compact, kanji, utf8);
+    String[] contents = { "0123456789", "HELLO WORLD", "hello, world", "\u65E5\u672C\u8A9E",
+        "caf\u00E9 \u0416", "Katakana:\u30A2a\u30A2a" };
+    for (String content : contents) {
+      for (Map<EncodeHintType, Object> hint : hints) {
+        String expected = QRCodeTestCase.toString(Encoder.encode(content, ErrorCorrectionLevel.M, hint));
+        assertEquals(expected, QRCodeTestCase.toString(
+            Encoder.encode(new StringBuilder(content), ErrorCorrectionLevel.M, hint)));
+        char[] chars = ("<<" + content + ">>").toCharArray();
+        assertEquals(expected, QRCodeTestCase.toString(
+            Encoder.encode(chars, 2, content.length(), ErrorCorrectionLevel.M, hint)));
+      }
+    }
+  }
+
+  @Test
+  public void testEncodePreEncodedBytes() throws WriterException {
+    String content = "caf\u00E9 \u0416";
+    Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+    hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+    String expected = QRCodeTestCase.toString(Encoder.encode(content, ErrorCorrectionLevel.H, hints));
+    byte[] bytes = ("--" + content).getBytes(StandardCharsets.UTF_8);
+    assertEquals(expected, QRCodeTestCase.toString(
+        Encoder.encode(bytes, 2, bytes.length - 2, StandardCharsets.UTF_8, ErrorCorrectionLevel.H, null)));
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes);
+    ((Buffer) buffer).position(2);
+    assertEquals(expected, QRCodeTestCase.toString(
+        Encoder.encode(buffer, StandardCharsets.UTF_8, ErrorCorrectionLevel.H, null)));
+    assertEquals(2, buffer.position());
+
+    // no ECI
+    assertEquals(QRCodeTestCase.toString(Encoder.encode("abc", ErrorCorrectionLevel.H)), QRCodeTestCase.toString(
+        Encoder.encode(new byte[] { 'a', 'b', 'c' }, 0, 3, null, ErrorCorrectionLevel.H, null)));
+  }
+
+  @Test
+  public void testEncodeBytes() throws WriterException {
+    // binary content is the same as its ISO-8859-1 text
+    byte[] bytes = new byte[256];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i * 37);
+    }
+    Map<EncodeHintType, Object> gs1 = new EnumMap<>(EncodeHintType.class);
+    gs1.put(EncodeHintType.GS1_FORMAT, true);
+    for (int length : new int[] { 0, 1, 2, 3, 4, 5, 17, 106, 107, 256 }) {
+      String text = new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+      for (Map<EncodeHintType, Object> hints : Arrays.asList(null, gs1)) {
+        String expected = QRCodeTestCase.toString(Encoder.encode(text, ErrorCorrectionLevel.Q, hints));
+        assertEquals(expected, QRCodeTestCase.toString(
+            Encoder.encodeBytes(Arrays.copyOf(bytes, length), ErrorCorrectionLevel.Q, hints)));
+        ByteBuffer slice = ByteBuffer.wrap(bytes, 3, length > 3 ? length - 3 : 0).slice();
+        assertEquals(QRCodeTestCase.toString(Encoder.encode(
+            new String(bytes, 3, slice.remaining(), StandardCharsets.ISO_8859_1), ErrorCorrectionLevel.Q, hints)),
+            QRCodeTestCase.toString(Encoder.encodeBytes(slice, ErrorCorrectionLevel.Q, hints)));
+      }
+    }
+
+    Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+    hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+    hints.put(EncodeHintType.QR_VERSION, 3);
+    String text = "\u0416\u0416\u0416 0123";
+    assertEquals(QRCodeTestCase.toString(Encoder.encode(text, ErrorCorrectionLevel.L, hints)), QRCodeTestCase.toString(
+        Encoder.encodeBytes(text.getBytes(StandardCharsets.UTF_8), ErrorCorrectionLevel.L, hints)));
+    hints.put(EncodeHintType.QR_VERSION, 1);
+    try {
+      Encoder.encodeBytes(new byte[17], ErrorCorrectionLevel.L, hints);
+      fail("Should have thrown a WriterException");
+    } catch (WriterException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testBatchEncode() throws WriterException {
+    Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+    hints.put(EncodeHintType.QR_VERSION, 2);
+    String[] contents = new String[5000];
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = i % 97 == 0 ? "THIS IS TOO LONG FOR VERSION 2 AT LEVEL H, ISN'T IT" : "LABEL-" + i;
+    }
+    WriterException[] failures = new WriterException[contents.length];
+    QRCode[] codes;
+    ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      codes = BatchEncoder.encode(contents, ErrorCorrectionLevel.H, hints, pool, failures);
+    } finally {
+      pool.shutdown();
+    }
+    for (int i = 0; i < contents.length; i++) {
+      if (i % 97 == 0) {
+        assertNull(codes[i]);
+        assertNotNull(failures[i]);
+      } else {
+        assertNull(failures[i]);
+        assertEquals(QRCodeTestCase.toString(Encoder.encode(contents[i], ErrorCorrectionLevel.H, hints)),
+            QRCodeTestCase.toString(codes[i]));
+      }
+    }
+
+    final int[] next = new int[1];
+    BatchEncoder.encode(Arrays.asList(contents).iterator(), ErrorCorrectionLevel.H, hints, null,
+        new BatchEncoder.Sink() {
+          @Override public void encoded(int index, QRCode code) {
+            assertEquals(next[0]++, index);
+            assertTrue(index % 97 != 0);
+          }
+          @Override public void failed(int index, WriterException e) {
+            assertEquals(next[0]++, index);
+            assertEquals(0, index % 97);
+          }
+        });
+    assertEquals(contents.length, next[0]);
+  }
+
   @Test
   public void testSimpleUTF8ECI() throws WriterException {
     Map<EncodeHintType,Object> hints = new EnumMap<>(EncodeHintType.class);
@@ -572,24 +778,58 @@ public final class EncoderTestCase extends Assert {
   public void testAppend8BitBytes() {
     // 0x61, 0x62, 0x63
     BitArray bits = new BitArray();
-    Encoder.append8BitBytes("abc", bits, Encoder.DEFAULT_BYTE_MODE_ENCODING);
+    Encoder.append8BitBytes("abc", bits, 0, 3, Encoder.DEFAULT_BYTE_MODE_ENCODING);
     assertEquals(" .XX....X .XX...X. .XX...XX", BitArrayUtils.toString(bits));
     // Empty.
     bits = new BitArray();
-    Encoder.append8BitBytes("", bits, Encoder.DEFAULT_BYTE_MODE_ENCODING);
+    Encoder.append8BitBytes("", bits, 0, 0, Encoder.DEFAULT_BYTE_MODE_ENCODING);
     assertEquals("", BitArrayUtils.toString(bits));
   }
 
+  @Test
+  public void testAppend8BitBytesAsGetBytes() {
+    String content = "a\u00E9\u0416\u65E5\ud83d\ude00\ud83d!\ude00\ud83d";
+    for (Charset charset : new Charset[] { StandardCharsets.ISO_8859_1, StandardCharsets.UTF_8,
+        StandardCharsets.UTF_16BE, Encoder.SHIFT_JIS_CHARSET, Charset.forName("windows-1251") }) {
+      for (int from = 0; from < content.length(); from++) {
+        BitArray expected = new BitArray();
+        for (byte b : content.substring(from).getBytes(charset)) {
+          expected.appendBits(b, 8);
+        }
+        BitArray bits = new BitArray();
+        Encoder.append8BitBytes(content, bits, from, content.length(), charset);
+        assertEquals(charset + " from " + from, BitArrayUtils.toString(expected), BitArrayUtils.toString(bits));
+      }
+    }
+  }
+
   // Numbers are from page 21 of JISX0510:2004
   @Test
   public void testAppendKanjiBytes() throws WriterException {
     BitArray bits = new BitArray();
-    Encoder.appendKanjiBytes(shiftJISString(bytes(0x93, 0x5f)), bits);
+    Encoder.appendKanjiBytes(shiftJISString(bytes(0x93, 0x5f)), bits, 0, 1);
     assertEquals(" .XX.XX.. XXXXX", BitArrayUtils.toString(bits));
-    Encoder.appendKanjiBytes(shiftJISString(bytes(0xe4, 0xaa)), bits);
+    Encoder.appendKanjiBytes(shiftJISString(bytes(0xe4, 0xaa)), bits, 0, 1);
     assertEquals(" .XX.XX.. XXXXXXX. X.X.X.X. X.", BitArrayUtils.toString(bits));
   }
 
+  @Test
+  public void testKanjiCode() { // Mike-ADDED: the table agrees with Shift_JIS conversion of every char
+    for (int c = 0; c <= 0xFFFF; c++) {
+      byte[] bytes = String.valueOf((char) c).getBytes(Encoder.SHIFT_JIS_CHARSET);
+      int code = bytes.length == 2 ? ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF) : -1;
+      int expected = -1;
+      if (code >= 0x8140 && code <= 0x9ffc) {
+        expected = ((code - 0x8140) >> 8) * 0xc0 + ((code - 0x8140) & 0xff);
+      } else if (code >= 0xe040 && code <= 0xebbf) {
+        expected = ((code - 0xc140) >> 8) * 0xc0 + ((code - 0xc140) & 0xff);
+      }
+      assertEquals(Integer.toHexString(c), expected, Encoder.kanjiCode((char) c));
+    }
+    assertTrue(Encoder.isOnlyDoubleByteKanji(shiftJISString(bytes(0x93, 0x5f, 0xe4, 0xaa))));
+    assertFalse(Encoder.isOnlyDoubleByteKanji(shiftJISString(bytes(0x93, 0x5f, 0x41))));
+  }
+
   // Numbers are from http://www.swetake.com/qr/qr3.html and
   // http://www.swetake.com/qr/qr9.html
   @Test
@@ -893,6 +1133,275 @@ public final class EncoderTestCase extends Assert {
         "ECI(Shift_JIS),BYTE(Katakana:.a.a.a.a.a.)", false);
   }
 
+  @Test
+  public void testMinimalEncoderByteOffsets() { // Mike-ADDED
+    String input = "a\u00E9\u0150\u015C\u30A2\u0436\u20AC1";
+    CharsetTable[] encoders = {
+        CharsetTable.ISO_8859_1, CharsetTable.forCharset(Charset.forName("ISO-8859-2")),
+        CharsetTable.forCharset(Encoder.SHIFT_JIS_CHARSET), CharsetTable.UTF_8, CharsetTable.UTF_16BE,
+    };
+    int[] offsets = MinimalEncoder.byteOffsets(input, encoders);
+    for (int e = 0; e < encoders.length; e++) {
+      for (int from = 0; from < input.length(); from++) {
+        for (int to = from + 1; to <= input.length(); to++) {
+          String range = input.substring(from, to);
+          if (encoders[e].charset.newEncoder().canEncode(range)) {
+            assertEquals(range.getBytes(encoders[e].charset).length,
+                MinimalEncoder.byteCount(offsets, input.length(), e, from, to - from));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testCharsetTable() { // Mike-ADDED
+    for (Charset charset : new Charset[] { StandardCharsets.ISO_8859_1, Charset.forName("ISO-8859-2"),
+        Charset.forName("windows-1251"), Encoder.SHIFT_JIS_CHARSET, StandardCharsets.UTF_8,
+        StandardCharsets.UTF_16BE }) {
+      CharsetTable table = CharsetTable.forCharset(charset);
+      assertSame(table, CharsetTable.forCharset(charset));
+      CharsetEncoder encoder = charset.newEncoder();
+      for (int c = 0; c <= 0xFFFF; c++) {
+        boolean canEncode = encoder.canEncode((char) c);
+        assertEquals(charset + " " + Integer.toHexString(c), canEncode, table.canEncode((char) c));
+        assertEquals(charset + " " + Integer.toHexString(c),
+            canEncode ? String.valueOf((char) c).getBytes(charset).length : 0, table.byteLength((char) c));
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentCompactEncoding() throws WriterException { // Mike-ADDED
+    Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+    hints.put(EncodeHintType.QR_COMPACT, true);
+    String[] samples = { "\u0150\u015C", "\u0416\u0436 and \u00E9", "\u30A2\u65E5\u672C", "\u20AC 12345", "ABC-42" };
+    String[] contents = new String[2000];
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = samples[i % samples.length] + i + samples[(i / samples.length) % samples.length];
+    }
+    WriterException[] failures = new WriterException[contents.length];
+    QRCode[] codes;
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      codes = BatchEncoder.encode(contents, ErrorCorrectionLevel.M, hints, pool, failures);
+    } finally {
+      pool.shutdown();
+    }
+    for (int i = 0; i < contents.length; i++) {
+      assertNull(failures[i]);
+      assertEquals(QRCodeTestCase.toString(Encoder.encode(contents[i], ErrorCorrectionLevel.M, hints)),
+          QRCodeTestCase.toString(codes[i]));
+    }
+  }
+
+  @Test
+  public void testGreedySegmentation() { // Mike-ADDED
+    verifyGreedySegmentation("", false, 0, "BYTE(0)");
+    verifyGreedySegmentation("0123456789", false, 0, "NUMERIC(0)");
+    verifyGreedySegmentation("a1234b", false, 0, "BYTE(0)");
+    verifyGreedySegmentation("ABCDEF1234567890123456abc", false, 0, "ALPHANUMERIC(0)NUMERIC(6)BYTE(22)");
+    verifyGreedySegmentation("http://example.com/12345678901234567890", false, 0, "BYTE(0)NUMERIC(19)");
+    // 8 digits are enough to leave BYTE mode for versions 1-9 but not for 27-40
+    verifyGreedySegmentation("abc12345678def", false, 0, "BYTE(0)NUMERIC(3)BYTE(11)");
+    verifyGreedySegmentation("abc12345678def", false, 2, "BYTE(0)");
+    // a short alphanumeric prefix goes to BYTE mode with the rest
+    verifyGreedySegmentation("ABCabc", false, 0, "BYTE(0)");
+    verifyGreedySegmentation("ABCDEFGHabc", false, 0, "ALPHANUMERIC(0)BYTE(8)");
+    verifyGreedySegmentation("\u65E5\u672Ca", true, 0, "KANJI(0)BYTE(2)");
+    verifyGreedySegmentation("\u65E5\u672C1", false, 0, "BYTE(0)");
+  }
+
+  @Test
+  public void testGreedyEncoding() throws WriterException { // Mike-ADDED
+    Map<EncodeHintType, Object> greedy = new EnumMap<>(EncodeHintType.class);
+    greedy.put(EncodeHintType.QR_GREEDY_SEGMENTATION, true);
+    String[] samples = { "ABCDEF", "0123456789012345", "hello, world", "HTTPS://EXAMPLE.COM/", "\u00E9t\u00E9" };
+    for (int n = 1; n < 200; n += 7) {
+      StringBuilder content = new StringBuilder();
+      for (int i = 0; i < n; i++) {
+        content.append(samples[(i * 7 + n) % samples.length]);
+      }
+      for (ErrorCorrectionLevel ecLevel : ErrorCorrectionLevel.values()) {
+        int plainVersion;
+        try {
+          plainVersion = Encoder.encode(content, ecLevel, null).version;
+        } catch (WriterException e) {
+          plainVersion = 41;
+        }
+        int greedyVersion;
+        try {
+          greedyVersion = Encoder.encode(content, ecLevel, greedy).version;
+        } catch (WriterException e) {
+          assertEquals(41, plainVersion);
+          continue;
+        }
+        assertTrue(content.toString(), greedyVersion <= plainVersion);
+      }
+    }
+    // a single segment is encoded as without the hint
+    for (String content : new String[] { "0123456789", "ABC-42", "hello, world" }) {
+      assertEquals(QRCodeTestCase.toString(Encoder.encode(content, ErrorCorrectionLevel.M, null)),
+          QRCodeTestCase.toString(Encoder.encode(content, ErrorCorrectionLevel.M, greedy)));
+    }
+    // a requested version is used as is
+    greedy.put(EncodeHintType.QR_VERSION, 12);
+    assertEquals(12, Encoder.encode("ABCDEFGHabc12345678def", ErrorCorrectionLevel.M, greedy).version);
+    greedy.put(EncodeHintType.QR_VERSION, 1);
+    try {
+      Encoder.encode("ABCDEFGHabc12345678def0123456789", ErrorCorrectionLevel.H, greedy);
+      fail("Should have thrown a WriterException");
+    } catch (WriterException e) {
+      assertEquals("Data too big for requested version", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testEncodeSegments() throws WriterException { // Mike-ADDED
+    String url = "http://example.com/123456789012";
+    Map<EncodeHintType, Object> greedy = new EnumMap<>(EncodeHintType.class);
+    greedy.put(EncodeHintType.QR_GREEDY_SEGMENTATION, true);
+    assertEquals(QRCodeTestCase.toString(Encoder.encode(url, ErrorCorrectionLevel.M, greedy)),
+        QRCodeTestCase.toString(Encoder.encodeSegments(Arrays.asList(
+            Segment.bytes(url, 0, 19, StandardCharsets.ISO_8859_1), Segment.numeric(url, 19, url.length())),
+            ErrorCorrectionLevel.M, null)));
+
+    assertEquals(QRCodeTestCase.toString(Encoder.encode("0123456789", ErrorCorrectionLevel.H, null)),
+        QRCodeTestCase.toString(Encoder.encodeSegments(Collections.singletonList(
+            Segment.numeric("0123456789", 0, 10)), ErrorCorrectionLevel.H, null)));
+
+    // ECI is written as with a charset hint
+    Map<EncodeHintType, Object> utf8 = new EnumMap<>(EncodeHintType.class);
+    utf8.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+    utf8.put(EncodeHintType.GS1_FORMAT, true);
+    byte[] bytes = "h\u00E9llo".getBytes(StandardCharsets.UTF_8);
+    String expected = QRCodeTestCase.toString(Encoder.encode("h\u00E9llo", ErrorCorrectionLevel.L, utf8));
+    assertEquals(expected, QRCodeTestCase.toString(Encoder.encodeSegments(Collections.singletonList(
+        Segment.bytes("h\u00E9llo", 0, 5, StandardCharsets.UTF_8)), ErrorCorrectionLevel.L, utf8)));
+    assertEquals(expected, QRCodeTestCase.toString(Encoder.encodeSegments(Collections.singletonList(
+        Segment.bytes(bytes, 0, bytes.length, StandardCharsets.UTF_8)), ErrorCorrectionLevel.L, utf8)));
+
+    // sizes are exact: ECI, mode and count of every segment, a switch back to ISO-8859-1 needs another ECI
+    List<Segment> segments = Arrays.asList(
+        Segment.bytes("\u20AC", 0, 1, StandardCharsets.UTF_8), Segment.alphanumeric("AB1", 0, 3),
+        Segment.bytes("\u00E9", 0, 1, StandardCharsets.ISO_8859_1), Segment.kanji("\u65E5", 0, 1));
+    assertEquals(12 + 4 + 24 + 4 + 17 + 12 + 4 + 8 + 4 + 13, Encoder.segmentBits(segments, false));
+    assertEquals(Encoder.segmentBits(segments, false) + 8 + 9 + 8 + 8,
+        Encoder.segmentBits(segments, Encoder.segmentBits(segments, false), 1));
+    BitArray bits = new BitArray();
+    Encoder.appendSegments(segments, false, 1, bits);
+    assertEquals(Encoder.segmentBits(segments, Encoder.segmentBits(segments, false), 1), bits.getSize());
+
+    for (String invalid : new String[] { "12a", "\u0661" }) {
+      try {
+        Segment.numeric(invalid, 0, invalid.length());
+        fail(invalid);
+      } catch (WriterException expectedException) {
+        // continue
+      }
+    }
+    try {
+      Segment.alphanumeric("ABc", 0, 3);
+      fail();
+    } catch (WriterException expectedException) {
+      assertEquals("Not alphanumeric at 2", expectedException.getMessage());
+    }
+    try {
+      Segment.kanji("\u65E5a\u672C", 0, 3);
+      fail();
+    } catch (WriterException expectedException) {
+      assertEquals("Not Kanji at 1", expectedException.getMessage());
+    }
+    // characters the charset can't encode are rejected instead of written as '?'
+    for (Object[] invalid : new Object[][] { { "a\u20ACb", StandardCharsets.ISO_8859_1 },
+        { "\uAC00", Encoder.SHIFT_JIS_CHARSET }, { "a\uD83D", StandardCharsets.UTF_8 },
+        { "\uDE00\uD83D", StandardCharsets.UTF_8 } }) {
+      String content = (String) invalid[0];
+      try {
+        Segment.bytes(content, 0, content.length(), (Charset) invalid[1]);
+        fail(content);
+      } catch (WriterException expectedException) {
+        // continue
+      }
+    }
+    assertEquals(4, Segment.bytes("\uD83D\uDE00", 0, 2, StandardCharsets.UTF_8).numLetters);
+    Map<EncodeHintType, Object> version1 = new EnumMap<>(EncodeHintType.class);
+    version1.put(EncodeHintType.QR_VERSION, 1);
+    assertEquals(1, Encoder.encodeSegments(Collections.singletonList(Segment.numeric(url, 19, url.length())),
+        ErrorCorrectionLevel.H, version1).version);
+    try {
+      Encoder.encodeSegments(Collections.singletonList(Segment.bytes(url, 0, url.length(),
+          StandardCharsets.ISO_8859_1)), ErrorCorrectionLevel.H, version1);
+      fail();
+    } catch (WriterException expectedException) {
+      // continue
+    }
+  }
+
+  @Test
+  public void testEncodePlan() throws Exception { // Mike-ADDED
+    Map<EncodeHintType, Object> compact = new EnumMap<>(EncodeHintType.class);
+    compact.put(EncodeHintType.QR_COMPACT, true);
+    Map<EncodeHintType, Object> greedy = new EnumMap<>(EncodeHintType.class);
+    greedy.put(EncodeHintType.QR_GREEDY_SEGMENTATION, true);
+    Map<EncodeHintType, Object> masked = new EnumMap<>(EncodeHintType.class);
+    masked.put(EncodeHintType.QR_MASK_PATTERN, 3);
+    masked.put(EncodeHintType.QR_VERSION, 10);
+    Map<EncodeHintType, Object> gs1 = new EnumMap<>(EncodeHintType.class);
+    gs1.put(EncodeHintType.GS1_FORMAT, true);
+    gs1.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+    EncoderContext context = new EncoderContext();
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      for (String content : new String[] { "0123456789", "ABC-42", "http://example.com/123456789012",
+          "\u0150\u015C \u20AC 12345" }) {
+        for (Map<EncodeHintType, Object> hints : Arrays.asList(null, compact, greedy, masked, gs1)) {
+          String expected = QRCodeTestCase.toString(Encoder.encode(content, ErrorCorrectionLevel.Q, hints));
+          EncodePlan plan = Encoder.plan(content, ErrorCorrectionLevel.Q, hints, context);
+          assertTrue(plan.bitsNeeded > 0);
+          assertTrue(plan.remainingBits() >= 0);
+          assertEquals(plan.capacityBits, plan.bitsNeeded + plan.remainingBits());
+          // the context may be reused before the plan is executed, possibly on another thread
+          Encoder.encode("reused", ErrorCorrectionLevel.H, null, context);
+          QRCode code = pool.submit(() -> plan.execute()).get();
+          assertEquals(expected, QRCodeTestCase.toString(code));
+          assertEquals(plan.version, code.version);
+          assertEquals(plan.dimension, code.matrix.width);
+          assertEquals(expected, QRCodeTestCase.toString(plan.execute(context)));
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    String url = "http://example.com/123456789012";
+    List<Segment> segments = Arrays.asList(
+        Segment.bytes(url, 0, 19, StandardCharsets.ISO_8859_1), Segment.numeric(url, 19, url.length()));
+    EncodePlan plan = Encoder.planSegments(segments, ErrorCorrectionLevel.L, null);
+    assertEquals(2, plan.version);
+    assertEquals(4 + 8 + 19 * 8 + 4 + 10 + 40, plan.bitsNeeded);
+    assertEquals(34 * 8, plan.capacityBits);
+    assertEquals(QRCodeTestCase.toString(Encoder.encodeSegments(segments, ErrorCorrectionLevel.L, null)),
+        QRCodeTestCase.toString(plan.execute()));
+
+    byte[] bytes = { 1, 2, 3, (byte) 0xFF };
+    assertEquals(QRCodeTestCase.toString(Encoder.encodeBytes(bytes, ErrorCorrectionLevel.M, null)),
+        QRCodeTestCase.toString(Encoder.plan(ByteBuffer.wrap(bytes), null, ErrorCorrectionLevel.M, null, context)
+            .execute(context)));
+    assertEquals(QRCodeTestCase.toString(Encoder.encodeBytes(bytes, ErrorCorrectionLevel.M, null)),
+        QRCodeTestCase.toString(Encoder.plan(ByteBuffer.wrap(bytes), null, ErrorCorrectionLevel.M, null).execute()));
+  }
+
+  private static void verifyGreedySegmentation(String input, boolean kanji, int versionClass, String expected) {
+    int[] segments = new int[Math.max(input.length(), 1)];
+    int count = GreedyEncoder.segment(input, kanji, versionClass, segments);
+    StringBuilder actual = new StringBuilder();
+    for (int s = 0; s < count; s++) {
+      actual.append(MinimalEncoder.MODES[segments[s] & 3]).append('(').append(segments[s] >>> 2).append(')');
+    }
+    assertEquals(expected, actual.toString());
+  }
+
   static void verifyMinimalEncoding(String input, String expectedResult, boolean isGS1)
       throws Exception {
     int[] outVersion = new int[1];
@@ -989,9 +1498,9 @@ public final class EncoderTestCase extends Assert {
     Mode mode = node.mode;
     result.append(mode.name()).append('(');
     if (mode == Mode.ECI) {
-      result.append(node.encoder.charset().displayName());
+      result.append(node.encoder.charset.displayName());
     } else {
-      String stringToEncode = node.stringToEncode;
+      CharSequence stringToEncode = node.stringToEncode;
       for (int i = node.fromPosition; i < node.fromPosition + node.characterLength; i++) {
         result.append(
             stringToEncode.charAt(i) < 32 || stringToEncode.charAt(i) > 126 ? '.' : stringToEncode.charAt(i));
@@ -19,6 +19,8 @@ package com.google.zxing.qrcode.encoder;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Random;
+
 /**
  * @author satorux@google.com (Satoru Takabayashi) - creator
  * @author mysen@google.com (Chris Mysen) - ported from C++
@@ -280,4 +282,97 @@ public final class MaskUtilTestCase extends Assert {
     };
     assertTrue(testGetDataMaskBitInternal(7, mask7));
   }
+
+  // Mike-ADDED: bitboard rules against straightforward module-by-module ones
+  @Test
+  public void testBitboardPenaltiesMatchReference() {
+    Random random = new Random(0xB1B0A2DL);
+    int[] sizes = { 1, 5, 7, 11, 21, 63, 64, 65, 77, 127, 128, 129, 177 };
+    for (int width : sizes) {
+      for (int height : sizes) {
+        ByteMatrix matrix = new ByteMatrix(width, height);
+        for (int y = 0; y < height; y++) {
+          for (int x = 0; x < width; ) {
+            if (random.nextInt(8) == 0) { // plant a finder-like pattern
+              for (char c : "00001011101".toCharArray()) {
+                if (x < width) matrix.set(x++, y, c - '0');
+              }
+            } else {
+              int run = 1 + random.nextInt(random.nextBoolean() ? 2 : 8);
+              int bit = random.nextInt(2);
+              for (; run > 0 && x < width; run--) matrix.set(x++, y, bit);
+            }
+          }
+        }
+        String size = width + "x" + height;
+        assertEquals(size, referenceRule1(matrix, true), MaskUtil.applyMaskPenaltyRule1Internal(matrix, true));
+        assertEquals(size, referenceRule1(matrix, false), MaskUtil.applyMaskPenaltyRule1Internal(matrix, false));
+        assertEquals(size, referenceRule2(matrix), MaskUtil.applyMaskPenaltyRule2(matrix));
+        assertEquals(size, referenceRule3(matrix), MaskUtil.applyMaskPenaltyRule3(matrix));
+        assertEquals(size, referenceRule4(matrix), MaskUtil.applyMaskPenaltyRule4(matrix));
+      }
+    }
+  }
+
+  private static int module(ByteMatrix matrix, int i, int j, boolean isHorizontal) {
+    return isHorizontal ? matrix.get(j, i) : matrix.get(i, j);
+  }
+
+  private static int referenceRule1(ByteMatrix matrix, boolean isHorizontal) {
+    int penalty = 0;
+    int iLimit = isHorizontal ? matrix.height : matrix.width;
+    int jLimit = isHorizontal ? matrix.width : matrix.height;
+    for (int i = 0; i < iLimit; i++) {
+      for (int j = 0; j < jLimit; ) {
+        int end = j;
+        while (end < jLimit && module(matrix, i, end, isHorizontal) == module(matrix, i, j, isHorizontal)) end++;
+        if (end - j >= 5) penalty += end - j - 2;
+        j = end;
+      }
+    }
+    return penalty;
+  }
+
+  private static int referenceRule2(ByteMatrix matrix) {
+    int penalty = 0;
+    for (int y = 0; y < matrix.height - 1; y++) {
+      for (int x = 0; x < matrix.width - 1; x++) {
+        int value = matrix.get(x, y);
+        if (value == matrix.get(x + 1, y) && value == matrix.get(x, y + 1) && value == matrix.get(x + 1, y + 1)) {
+          penalty += 3;
+        }
+      }
+    }
+    return penalty;
+  }
+
+  private static int referenceRule3(ByteMatrix matrix) {
+    int penalty = 0;
+    for (boolean isHorizontal : new boolean[] { true, false }) {
+      int iLimit = isHorizontal ? matrix.height : matrix.width;
+      int jLimit = isHorizontal ? matrix.width : matrix.height;
+      for (int i = 0; i < iLimit; i++) {
+        StringBuilder line = new StringBuilder();
+        for (int j = 0; j < jLimit; j++) line.append(module(matrix, i, j, isHorizontal));
+        for (int j = line.indexOf("1011101"); j >= 0; j = line.indexOf("1011101", j + 1)) {
+          if (j >= 4 && line.substring(j - 4, j).equals("0000") ||
+              j + 11 <= jLimit && line.substring(j + 7, j + 11).equals("0000")) {
+            penalty += 40;
+          }
+        }
+      }
+    }
+    return penalty;
+  }
+
+  private static int referenceRule4(ByteMatrix matrix) {
+    int dark = 0;
+    for (int y = 0; y < matrix.height; y++) {
+      for (int x = 0; x < matrix.width; x++) {
+        dark += matrix.get(x, y);
+      }
+    }
+    int total = matrix.width * matrix.height;
+    return Math.abs(dark * 2 - total) * 10 / total * 10;
+  }
 }
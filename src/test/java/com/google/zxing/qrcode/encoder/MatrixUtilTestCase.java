@@ -23,6 +23,8 @@ import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Random;
+
 /**
  * @author satorux@google.com (Satoru Takabayashi) - creator
  * @author mysen@google.com (Chris Mysen) - ported from C++
@@ -260,6 +262,55 @@ public final class MatrixUtilTestCase extends Assert {
     assertEquals(expected, toString(matrix));
   }
 
+  @Test
+  public void testApplyMask() throws WriterException {
+    Random random = new Random(7);
+    for (int version = 1; version <= 40; version += 3) {
+      int dimension = Encoder.dimensionForVersion(version);
+      BitArray bits = new BitArray();
+      for (int i = Encoder.totalCodewordsForVersion(version); i > 0; i--) {
+        bits.appendBits(random.nextInt(256), 8);
+      }
+      byte[] codewords = new byte[bits.getSizeInBytes()];
+      bits.toBytes(0, codewords, 0, codewords.length);
+      ByteMatrix unmasked = new ByteMatrix(dimension, dimension);
+      MatrixUtil.buildUnmaskedMatrix(codewords, codewords.length, version, unmasked);
+      long[][] maskBoards = VersionTemplate.forVersion(version).maskBoards();
+      long[] unmaskedRows = MaskUtil.rows(unmasked);
+      long[] unmaskedColumns = MaskUtil.columns(unmasked);
+      long[] rows = new long[unmaskedRows.length];
+      long[] columns = new long[unmaskedColumns.length];
+      ByteMatrix expected = new ByteMatrix(dimension, dimension);
+      ByteMatrix actual = new ByteMatrix(dimension, dimension);
+      for (int maskPattern = 0; maskPattern < QRCode.NUM_MASK_PATTERNS; maskPattern++) {
+        MatrixUtil.buildMatrix(bits, ErrorCorrectionLevel.Q, version, maskPattern, expected);
+        MatrixUtil.applyMask(unmasked, maskBoards[maskPattern], ErrorCorrectionLevel.Q, maskPattern, actual);
+        assertEquals(toString(expected), toString(actual));
+        MatrixUtil.applyMask(unmaskedRows, unmaskedColumns, maskBoards, ErrorCorrectionLevel.Q, maskPattern,
+            dimension, rows, columns);
+        assertArrayEquals(MaskUtil.rows(expected), rows);
+        assertArrayEquals(MaskUtil.columns(expected), columns);
+      }
+    }
+  }
+
+  @Test
+  public void testVersionTemplate() throws WriterException {
+    for (int version = 1; version <= 40; version++) {
+      VersionTemplate template = VersionTemplate.forVersion(version);
+      assertSame(template, VersionTemplate.forVersion(version));
+      int dimension = Encoder.dimensionForVersion(version);
+      int functionModules = 0;
+      for (long word : template.functionModules) {
+        functionModules += Long.bitCount(word);
+      }
+      assertEquals(dimension * dimension, functionModules + template.dataModules.length);
+      // Remainder bits: 0, 3, 4, or 7
+      int remainderBits = template.dataModules.length - 8 * Encoder.totalCodewordsForVersion(version);
+      assertTrue(remainderBits == 0 || remainderBits == 3 || remainderBits == 4 || remainderBits == 7);
+    }
+  }
+
   @Test
   public void testFindMSBSet() {
     assertEquals(0, 32 - Integer.numberOfLeadingZeros(0));
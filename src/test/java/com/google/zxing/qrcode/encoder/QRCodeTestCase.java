@@ -21,6 +21,8 @@ import com.google.zxing.qrcode.decoder.Mode;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Random;
+
 /**
  * @author satorux@google.com (Satoru Takabayashi) - creator
  * @author mysen@google.com (Chris Mysen) - ported from C++
@@ -68,6 +70,55 @@ public final class QRCodeTestCase extends Assert {
     assertEquals(expected, toString(qrCode));
   }
 
+  // Mike-ADDED
+  @Test
+  public void testSymbolMatrix() {
+    Random random = new Random(42);
+    for (int width : new int[] { 1, 21, 31, 32, 33, 63, 64, 65, 129, 177 }) {
+      int height = 1 + random.nextInt(20);
+      ByteMatrix matrix = new ByteMatrix(width, height);
+      matrix.clear((byte) -1);
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          if (random.nextInt(4) != 0) { // leave some empty
+            matrix.set(x, y, random.nextInt(3) == 0 ? 0 : 1);
+          }
+        }
+      }
+      SymbolMatrix symbol = SymbolMatrix.from(matrix);
+      long[] longs = new long[4];
+      int[] ints = new int[7];
+      byte[] bytes = new byte[24];
+      for (int y = 0; y < height; y++) {
+        assertEquals((width + 63) / 64, symbol.getRow(y, longs, 1));
+        assertEquals((width + 31) / 32, symbol.getRow(y, ints, 1));
+        assertEquals((width + 7) / 8, symbol.getRow(y, bytes, 1));
+        int dark = symbol.nextDark(0, y);
+        int runEnd = 0;
+        for (int x = 0; x < width; x++) {
+          boolean isDark = matrix.get(x, y) == 1;
+          assertEquals(isDark, symbol.get(x, y));
+          assertEquals(isDark, (longs[1 + x / 64] >>> x & 1) != 0);
+          assertEquals(isDark, (ints[1 + x / 32] >>> x & 1) != 0);
+          assertEquals(isDark, (bytes[1 + x / 8] >> (7 - x % 8) & 1) != 0);
+          if (isDark && x >= runEnd) { // runs cover exactly the dark modules
+            assertEquals(x, dark);
+            runEnd = symbol.nextLight(x, y);
+            for (int i = x; i < runEnd; i++) assertEquals(1, matrix.get(i, y));
+            assertTrue(runEnd == width || matrix.get(runEnd, y) != 1);
+            dark = symbol.nextDark(runEnd, y);
+          }
+        }
+        assertEquals(width, dark);
+        assertEquals(width, symbol.nextDark(width, y));
+      }
+      // bits past the row end are 0
+      if (width % 64 != 0) {
+        assertEquals(0, longs[1 + width / 64] >>> (width % 64));
+      }
+    }
+  }
+
   @Test
   public void testIsValidMaskPattern() {
     assertFalse(QRCode.isValidMaskPattern(-1));
@@ -21,6 +21,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import static com.google.zxing.qrcode.encoder.Encoder.QR_CODE_FIELD_256;
 
@@ -55,6 +56,40 @@ public final class ReedSolomonTestCase extends Assert {
         });
   }
 
+  @Test
+  public void testGeneratorCache() {
+    for (int ecBytes = 7; ecBytes <= 30; ecBytes++) {
+      int[] coefficients = Encoder.generator(ecBytes).coefficients;
+      assertSame(coefficients, Encoder.generator(ecBytes).coefficients);
+      assertEquals(ecBytes + 1, coefficients.length);
+      assertEquals(1, coefficients[0]);
+      for (int coefficient : coefficients) {
+        assertNotEquals(0, coefficient);
+      }
+    }
+  }
+
+  @Test
+  public void testShiftRegisterEncoder() {
+    Random random = new Random(0xEC);
+    byte[] ec = new byte[40];
+    for (int ecBytes = 7; ecBytes <= 30; ecBytes++) {
+      for (int dataBytes = 1; dataBytes <= 123; dataBytes += 17) {
+        int[] message = new int[dataBytes + ecBytes];
+        byte[] data = new byte[dataBytes + 3];
+        for (int i = 0; i < dataBytes; i++) {
+          message[i] = random.nextInt(256);
+          data[3 + i] = (byte) message[i];
+        }
+        Encoder.encodeReedSolomon(QR_CODE_FIELD_256, message, ecBytes);
+        Encoder.generateECBytes(data, 3, dataBytes, ec, 5, ecBytes);
+        for (int i = 0; i < ecBytes; i++) {
+          assertEquals(message[dataBytes + i], ec[5 + i] & 0xFF);
+        }
+      }
+    }
+  }
+
   private static void testEncodeDecode(GenericGF field, int[] dataWords, int[] ecWords) {
     testEncoder(field, dataWords, ecWords);
   }